@@ -0,0 +1,31 @@
+plugins {
+    // Runs the JMH benchmarks in src/jmh/java
+    // https://github.com/melix/jmh-gradle-plugin
+    id("me.champeau.jmh") version "0.7.3"
+}
+
+dependencies {
+    // The benchmarks are in the Llemmy packages, in order to access package private members
+    implementation(project(":llemmy"))
+    implementation(libs.codion.framework.db.local)
+    implementation(libs.langchain4j.core)
+    implementation(libs.lucene.core)
+
+    runtimeOnly(libs.codion.dbms.h2)
+    runtimeOnly(libs.h2)
+}
+
+jmh {
+    // Written as JSON, for tracking regressions between releases, i.e. with https://jmh.morethan.io
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("results/jmh/llemmy-${project.version}.json")
+    jvmArgsAppend = listOf(
+        // The chat panel benchmark renders into a headless document
+        "-Djava.awt.headless=true",
+        // The database for the chat panel benchmark
+        "-Dcodion.db.url=jdbc:h2:mem:benchmarks",
+        "-Dcodion.db.initScripts=classpath:create_schema.sql"
+    )
+    // Run a subset of the benchmarks, such as -Pjmh.includes=Base64Benchmark
+    findProperty("jmh.includes")?.let { includes = listOf(it.toString()) }
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.domain;
+
+import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.framework.domain.entity.Entities;
+import is.codion.framework.domain.entity.Entity;
+
+import dev.langchain4j.data.message.ChatMessageType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Formatting a chat with the {@link is.codion.framework.domain.entity.EntityFormatter} from the domain,
+ * as done for each chat displayed in the chat document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatFormatterBenchmark {
+
+	// The message length in characters
+	@Param({"100", "10000"})
+	private int length;
+
+	private final Entities entities = new Llemmy().entities();
+
+	private Entity chat;
+
+	@Setup
+	public void setup() {
+		chat = entities.entity(Chat.TYPE)
+						.with(Chat.SESSION, UUID.randomUUID())
+						.with(Chat.TIMESTAMP, LocalDateTime.now())
+						.with(Chat.NAME, "OLLAMA")
+						.with(Chat.MESSAGE_TYPE, ChatMessageType.AI)
+						.with(Chat.MESSAGE, "a".repeat(length))
+						.build();
+	}
+
+	@Benchmark
+	public String format() {
+		// Based on the entity formatter
+		return chat.toString();
+	}
+}
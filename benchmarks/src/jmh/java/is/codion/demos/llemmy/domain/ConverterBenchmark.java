@@ -0,0 +1,68 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.domain;
+
+import is.codion.demos.llemmy.domain.Llemmy.DurationConverter;
+import is.codion.demos.llemmy.domain.Llemmy.MessageTypeConverter;
+
+import dev.langchain4j.data.message.ChatMessageType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.time.Duration;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Round trips through the column converters, as done for each chat inserted and fetched.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConverterBenchmark {
+
+	private final MessageTypeConverter messageTypeConverter = new MessageTypeConverter();
+	private final DurationConverter durationConverter = new DurationConverter();
+
+	// Not constants, in order to prevent constant folding
+	private ChatMessageType messageType = ChatMessageType.AI;
+	private Duration duration = Duration.ofMillis(1_234);
+
+	@Benchmark
+	public ChatMessageType messageType() throws SQLException {
+		// The converters do not use the statement
+		return messageTypeConverter.fromColumn(messageTypeConverter.toColumn(messageType, null));
+	}
+
+	@Benchmark
+	public Duration duration() throws SQLException {
+		return durationConverter.fromColumn(durationConverter.toColumn(duration, null));
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import is.codion.demos.llemmy.domain.Llemmy;
+import is.codion.framework.domain.entity.Entities;
+import is.codion.framework.domain.entity.Entity;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.TokenUsage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * The construction of the chat entity for a model response, including serializing the response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatEntityBenchmark {
+
+	private static final Duration RESPONSE_TIME = Duration.ofMillis(1_234);
+
+	// The response length in characters
+	@Param({"100", "10000"})
+	private int length;
+
+	private final Entities entities = new Llemmy().entities();
+	private final UUID session = UUID.randomUUID();
+
+	private ChatResponse response;
+
+	@Setup
+	public void setup() {
+		response = ChatResponse.builder()
+						.aiMessage(AiMessage.from(Texts.text(length)))
+						.tokenUsage(new TokenUsage(100, length / 4))
+						.build();
+	}
+
+	@Benchmark
+	public Entity responseEntity() {
+		return EntityChatEditModel.responseEntity(entities, session, "OLLAMA", response, RESPONSE_TIME, false);
+	}
+}
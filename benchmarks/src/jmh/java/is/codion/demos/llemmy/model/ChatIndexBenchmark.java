@@ -0,0 +1,162 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import is.codion.demos.llemmy.domain.Llemmy;
+import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.demos.llemmy.model.ChatIndex.Hit;
+import is.codion.demos.llemmy.model.ChatIndex.Hits;
+import is.codion.demos.llemmy.model.ChatIndex.Snippet;
+import is.codion.framework.domain.entity.Entities;
+import is.codion.framework.domain.entity.Entity;
+
+import org.apache.lucene.search.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Searching the chat index for the first page of results, with and without the snippets,
+ * for a query matching a few and one matching many messages. The messages consist of
+ * words drawn from a Zipf distributed vocabulary, similar to natural language.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ChatIndexBenchmark {
+
+	private static final int VOCABULARY = 50_000;
+	private static final int WORDS_PER_MESSAGE = 60;
+	private static final int BATCH_SIZE = 10_000;
+	private static final int PAGE_SIZE = 20;
+
+	// The number of indexed messages
+	@Param({"100000", "1000000"})
+	private int messages;
+
+	// The query, each word ranked by frequency, "w10" being the tenth most common word
+	@Param({"w500 w2000", "w20 w50"})
+	private String text;
+
+	private final Entities entities = new Llemmy().entities();
+	private final Map<Integer, String> texts = new HashMap<>();
+
+	private ChatIndex index;
+	private Query query;
+
+	@Setup
+	public void setup() {
+		index = new ChatIndex(null);
+		Random random = new Random(42);
+		double[] cumulative = zipf();
+		List<Entity> batch = new ArrayList<>(BATCH_SIZE);
+		for (int id = 1; id <= messages; id++) {
+			String message = message(random, cumulative);
+			texts.put(id, message);
+			batch.add(entities.entity(Chat.TYPE)
+							.with(Chat.ID, id)
+							.with(Chat.MESSAGE, message)
+							.build());
+			if (batch.size() == BATCH_SIZE) {
+				index.add(batch);
+				batch.clear();
+			}
+		}
+		index.add(batch);
+		index.commit();
+		query = index.query(text);
+	}
+
+	@Benchmark
+	public Hits search() {
+		return index.search(query, 0, PAGE_SIZE);
+	}
+
+	@Benchmark
+	public List<Snippet> searchWithSnippets() {
+		List<Snippet> snippets = new ArrayList<>(PAGE_SIZE);
+		for (Hit hit : index.search(query, 0, PAGE_SIZE).hits()) {
+			snippets.add(index.snippet(query, texts.get(hit.chatId())));
+		}
+
+		return snippets;
+	}
+
+	private static String message(Random random, double[] cumulative) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < WORDS_PER_MESSAGE; i++) {
+			int rank = search(cumulative, random.nextDouble());
+			builder.append('w').append(rank + 1).append(' ');
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * @return the cumulative Zipf distribution over the vocabulary
+	 */
+	private static double[] zipf() {
+		double[] cumulative = new double[VOCABULARY];
+		double sum = 0;
+		for (int rank = 1; rank <= VOCABULARY; rank++) {
+			sum += 1d / rank;
+			cumulative[rank - 1] = sum;
+		}
+		for (int i = 0; i < VOCABULARY; i++) {
+			cumulative[i] /= sum;
+		}
+
+		return cumulative;
+	}
+
+	private static int search(double[] cumulative, double value) {
+		int low = 0;
+		int high = cumulative.length - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (cumulative[middle] < value) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+}
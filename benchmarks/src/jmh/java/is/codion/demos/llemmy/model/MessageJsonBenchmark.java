@@ -0,0 +1,89 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.ImageContent;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.UserMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import static dev.langchain4j.data.message.ChatMessageSerializer.messageToJson;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Serializing user messages to JSON, as done when storing a chat,
+ * for a text only message and for a message with images attached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageJsonBenchmark {
+
+	private static final int IMAGES = 3;
+
+	// The size of each attached image in bytes
+	@Param({"102400", "1048576"})
+	private int imageSize;
+
+	private UserMessage textMessage;
+	private UserMessage imageMessage;
+
+	@Setup
+	public void setup() {
+		textMessage = UserMessage.from(Texts.text(2_000));
+		List<Content> contents = new ArrayList<>();
+		contents.add(TextContent.from(Texts.text(200)));
+		Random random = new Random(imageSize);
+		for (int i = 0; i < IMAGES; i++) {
+			byte[] image = new byte[imageSize];
+			random.nextBytes(image);
+			contents.add(ImageContent.from(Base64.getEncoder().encodeToString(image), "image/png"));
+		}
+		imageMessage = UserMessage.from(contents);
+	}
+
+	@Benchmark
+	public String text() {
+		return messageToJson(textMessage);
+	}
+
+	@Benchmark
+	public String images() {
+		return messageToJson(imageMessage);
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import java.util.Random;
+
+/**
+ * Provides the benchmark texts.
+ */
+final class Texts {
+
+	private static final String[] WORDS = {"the", "model", "responded", "with", "a", "rather", "lengthy",
+					"answer", "containing", "code", "examples", "and", "explanations", "of", "each", "step"};
+
+	private Texts() {}
+
+	/**
+	 * @param length the text length
+	 * @return a text of the given length, consisting of words and line breaks
+	 */
+	static String text(int length) {
+		Random random = new Random(length);
+		StringBuilder builder = new StringBuilder(length + 16);
+		while (builder.length() < length) {
+			builder.append(WORDS[random.nextInt(WORDS.length)])
+							.append(random.nextInt(12) == 0 ? '\n' : ' ');
+		}
+		builder.setLength(length);
+
+		return builder.toString();
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.ui;
+
+import is.codion.common.db.database.Database;
+import is.codion.demos.llemmy.domain.Llemmy;
+import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.demos.llemmy.model.EntityChatEditModel;
+import is.codion.demos.llemmy.model.EntityChatTableModel;
+import is.codion.framework.db.EntityConnectionProvider;
+import is.codion.framework.db.local.LocalEntityConnectionProvider;
+import is.codion.framework.domain.entity.Entities;
+import is.codion.framework.domain.entity.Entity;
+
+import dev.langchain4j.data.message.ChatMessageType;
+import dev.langchain4j.model.chat.ChatModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static is.codion.common.utilities.user.User.user;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Refreshing the chat document of a headless {@link EntityChatTablePanel}, both when nothing has
+ * changed, as when the selection changes back and forth, and when rebuilding the whole document,
+ * as when the Look and Feel changes. Note that the history displays a single page of chats,
+ * see the llemmy.history.pageSize property.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RefreshChatBenchmark {
+
+	// The number of chats in the session
+	@Param({"20", "200"})
+	private int chats;
+
+	private EntityConnectionProvider connectionProvider;
+	private EntityChatTablePanel tablePanel;
+
+	@Setup
+	public void setup() {
+		connectionProvider = LocalEntityConnectionProvider.builder()
+						.database(Database.instance())
+						.domain(new Llemmy())
+						.user(user("sa"))
+						.build();
+		// Never prompted
+		ChatModel chatModel = new ChatModel() {};
+		EntityChatTableModel tableModel = new EntityChatTableModel(List.of(chatModel), model -> null, connectionProvider);
+		UUID session = ((EntityChatEditModel) tableModel.editModel()).session();
+		connectionProvider.connection().insert(chats(connectionProvider.entities(), session));
+		// Refreshes synchronously, since not on the Event Dispatch Thread
+		tableModel.items().refresh();
+		tablePanel = new EntityChatTablePanel(tableModel);
+		tablePanel.rebuildChat();
+	}
+
+	@TearDown
+	public void tearDown() {
+		((EntityChatEditModel) tablePanel.tableModel().editModel()).close();
+		connectionProvider.close();
+	}
+
+	@Benchmark
+	public void refresh() {
+		tablePanel.refreshChat();
+	}
+
+	@Benchmark
+	public void rebuild() {
+		tablePanel.rebuildChat();
+	}
+
+	private List<Entity> chats(Entities entities, UUID session) {
+		List<Entity> entityList = new ArrayList<>(chats);
+		LocalDateTime timestamp = LocalDateTime.now().minusHours(1);
+		for (int i = 0; i < chats; i++) {
+			boolean user = i % 2 == 0;
+			entityList.add(entities.entity(Chat.TYPE)
+							.with(Chat.SESSION, session)
+							.with(Chat.TIMESTAMP, timestamp.plusSeconds(i))
+							.with(Chat.NAME, user ? "user" : "OLLAMA")
+							.with(Chat.MESSAGE_TYPE, user ? ChatMessageType.USER : ChatMessageType.AI)
+							.with(Chat.MESSAGE, "Message number " + i + ", " + "with some text. ".repeat(user ? 2 : 40))
+							.build());
+		}
+
+		return entityList;
+	}
+}
@@ -22,6 +22,11 @@ dependencies {
 
     implementation(libs.langchain4j.core)
 
+    // The full-text index of the chat history
+    implementation(libs.lucene.core)
+    implementation(libs.lucene.analysis.common)
+    implementation(libs.lucene.queryparser)
+
     // Provides the Logback logging library as a transitive dependency
     runtimeOnly(libs.codion.plugin.logback.proxy)
     // The H2 database implementation
@@ -90,4 +95,44 @@ tasks.register<WriteProperties>("writeVersion") {
 // application resources, see usage in LlemmyAppModel
 tasks.processResources {
     from(tasks.named("writeVersion"))
-}
\ No newline at end of file
+}
+// Runs the chat history query benchmark, see ChatQueryBenchmark for the available settings
+tasks.register<JavaExec>("chatQueryBenchmark") {
+    group = "verification"
+    description = "Reports the chat history query latency, before and after the indexes are created"
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass = "is.codion.demos.llemmy.domain.ChatQueryBenchmark"
+    systemProperty("codion.db.url", "jdbc:h2:mem:benchmark")
+    systemProperty("codion.db.initScripts", "classpath:create_schema.sql")
+    // Pass on the benchmark settings, such as -Dllemmy.benchmark.sessions=10000
+    System.getProperties().stringPropertyNames()
+        .filter { it.startsWith("llemmy.benchmark.") }
+        .forEach { systemProperty(it, System.getProperty(it)) }
+}
+
+// Compares the in-memory and file based database modes, see DatabaseModeBenchmark for the available settings
+tasks.register<JavaExec>("databaseModeBenchmark") {
+    group = "verification"
+    description = "Reports the startup time, write time and heap usage of the database modes"
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass = "is.codion.demos.llemmy.domain.DatabaseModeBenchmark"
+    // Pass on the benchmark and database settings, such as -Dllemmy.benchmark.chats=20000
+    System.getProperties().stringPropertyNames()
+        .filter { it.startsWith("llemmy.benchmark.") || it.startsWith("llemmy.database.") }
+        .forEach { systemProperty(it, System.getProperty(it)) }
+}
+
+// Runs the headless load test, see LoadTest for the available settings
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Reports the throughput, latency and resource usage of concurrent chat sessions"
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass = "is.codion.demos.llemmy.model.LoadTest"
+    systemProperty("java.awt.headless", "true")
+    systemProperty("codion.db.url", "jdbc:h2:mem:loadtest")
+    systemProperty("codion.db.initScripts", "classpath:create_schema.sql")
+    // Pass on the Llemmy settings, such as -Dllemmy.loadtest.sessions=100 or -Dllemmy.writer.flushSize=100
+    System.getProperties().stringPropertyNames()
+        .filter { it.startsWith("llemmy.") }
+        .forEach { systemProperty(it, System.getProperty(it)) }
+}
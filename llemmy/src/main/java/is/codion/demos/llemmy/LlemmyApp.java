@@ -24,6 +24,7 @@ import is.codion.common.utilities.user.User;
 import is.codion.common.utilities.version.Version;
 import is.codion.demos.llemmy.domain.Llemmy;
 import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.demos.llemmy.model.EntityChatEditModel;
 import is.codion.demos.llemmy.model.EntityChatModel;
 import is.codion.demos.llemmy.ui.EntityChatEditPanel;
 import is.codion.demos.llemmy.ui.EntityChatPanel;
@@ -43,14 +44,27 @@ import com.formdev.flatlaf.FlatLaf;
 import com.formdev.flatlaf.extras.FlatInspector;
 import com.formdev.flatlaf.fonts.inter.FlatInterFont;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 
+import java.lang.System.Logger;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 import static is.codion.common.utilities.user.User.user;
 import static is.codion.swing.framework.ui.EntityTablePanel.SelectionMode.MENU;
+import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.getProperty;
 import static java.util.Objects.requireNonNull;
 import static javax.swing.SwingConstants.LEADING;
 
@@ -71,10 +85,21 @@ import static javax.swing.SwingConstants.LEADING;
  *     .build()));
  *}
  * @see #start(Supplier)
+ * @see #start(Supplier, Function)
  */
 // tag::app_panel[]
 public final class LlemmyApp extends EntityApplicationPanel<LlemmyApp.LlemmyAppModel> {
 
+	private static final Logger LOG = System.getLogger(LlemmyApp.class.getName());
+
+	// The directory for a persistent database, an in-memory one is used if not specified
+	private static final String DATABASE_DIRECTORY = getProperty("llemmy.database.directory");
+	// The database page cache size in KB, the H2 default of 64 MB would exceed the heap
+	private static final int DATABASE_CACHE_SIZE = Integer.getInteger("llemmy.database.cacheSize", 8_192);
+	// The maximum delay in ms before committed changes are written to the database file,
+	// allowing consecutive chat inserts to be written together
+	private static final int DATABASE_WRITE_DELAY = Integer.getInteger("llemmy.database.writeDelay", 1_000);
+
 	private LlemmyApp(LlemmyAppModel applicationModel) {
 		super(applicationModel,
 						// See LlemmyAppModel at the bottom of this class
@@ -85,6 +110,12 @@ public final class LlemmyApp extends EntityApplicationPanel<LlemmyApp.LlemmyAppM
 						applicationPanel -> () ->
 										// Simply return our single panel, initialized
 										applicationPanel.entityPanel(Chat.TYPE).initialize());
+		// Log the startup time and heap usage, for comparing the database modes
+		Runtime runtime = Runtime.getRuntime();
+		LOG.log(INFO, "Started in {0} ms using {1}, heap used {2} MB", ManagementFactory.getRuntimeMXBean().getUptime(),
+						Database.URL.get(), (runtime.totalMemory() - runtime.freeMemory()) / 1_048_576);
+		// Write the queued chats on exit, before closing the database
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> close(applicationModel.chatEditModel())));
 	}
 
 	/**
@@ -94,12 +125,61 @@ public final class LlemmyApp extends EntityApplicationPanel<LlemmyApp.LlemmyAppM
 	 */
 	@Override
 	protected Optional<Controls> createViewMenuControls() {
-		return Optional.of(Controls.builder()
+		EntityChatEditModel editModel = applicationModel().chatEditModel();
+
+		var controls = Controls.builder()
 						.caption(FrameworkMessages.view())
 						.mnemonic(FrameworkMessages.viewMnemonic())
-						// Just include the Always on top control
+						// Include the Always on top control
 						.control(createAlwaysOnTopControl())
-						.build());
+						.separator()
+						// and controls for toggling response streaming
+						.control(Control.builder()
+										.toggle(editModel.streaming())
+										.caption("Stream responses"))
+						// the conversation memory
+						.control(Control.builder()
+										.toggle(editModel.memory())
+										.caption("Conversation memory"))
+						// bypassing the response cache
+						.control(Control.builder()
+										.toggle(editModel.bypassCache())
+										.caption("Bypass response cache"))
+						// queueing prompts while requests are in progress
+						.control(Control.builder()
+										.toggle(editModel.queuePrompts())
+										.caption("Queue prompts while busy"))
+						// adapting the deadlines to the observed latency
+						.control(Control.builder()
+										.toggle(editModel.adaptiveDeadlines())
+										.caption("Adaptive deadlines"))
+						// failing over to the next model
+						.control(Control.builder()
+										.toggle(editModel.failover())
+										.caption("Fail over to the next model"))
+						.separator()
+						// and sending prompts to several models
+						.control(Control.builder()
+										.toggle(editModel.fanOut())
+										.caption("Send to all models"));
+		// along with a control for including each model
+		editModel.chatModels().items().get().forEach(chatModel ->
+						controls.control(Control.builder()
+										.toggle(editModel.fanOut(chatModel.get()))
+										.caption("- " + chatModel.caption())
+										.enabled(editModel.fanOut())));
+
+		// and the metrics dashboard
+		controls.separator()
+						.control(Control.builder()
+										.toggle(((EntityChatPanel) entityPanel(Chat.TYPE)).metrics())
+										.caption("Metrics"))
+						// and the chat history search
+						.control(Control.builder()
+										.toggle(((EntityChatPanel) entityPanel(Chat.TYPE)).search())
+										.caption("Search history"));
+
+		return Optional.of(controls.build());
 	}
 
 	/**
@@ -120,6 +200,10 @@ public final class LlemmyApp extends EntityApplicationPanel<LlemmyApp.LlemmyAppM
 						.control(Control.builder()
 										.toggle(help)
 										.caption("Help"))
+						// and one for the metrics dashboard
+						.control(Control.builder()
+										.toggle(((EntityChatPanel) entityPanel(Chat.TYPE)).metrics())
+										.caption("Metrics"))
 						.separator()
 						// Include the default log and about controls, separated
 						.control(createLogControls())
@@ -146,12 +230,72 @@ public final class LlemmyApp extends EntityApplicationPanel<LlemmyApp.LlemmyAppM
 						.build();
 	}
 
+	/**
+	 * Writes the queued chats and closes a file based database, which is kept open
+	 * on exit until then, writing the changes still pending due to the write delay.
+	 * @param editModel the edit model
+	 */
+	private static void close(EntityChatEditModel editModel) {
+		editModel.close();
+		if (DATABASE_DIRECTORY != null) {
+			try (Connection connection = DriverManager.getConnection(Database.URL.get(), "sa", "");
+					 Statement statement = connection.createStatement()) {
+				statement.execute("shutdown");
+			}
+			catch (SQLException e) {
+				LOG.log(ERROR, "Unable to close the database", e);
+			}
+		}
+	}
+
+	/**
+	 * Configures an in-memory database, or a persistent one in case the 'llemmy.database.directory'
+	 * system property is specified, in which case the schema is only created when the database is new,
+	 * otherwise it is upgraded, in case the database was created by an earlier version.
+	 */
+	private static void configureDatabase() {
+		if (DATABASE_DIRECTORY == null) {
+			// Configure the jdbc URL ('codion.db.url')
+			Database.URL.set("jdbc:h2:mem:h2db");
+			// and the database initialization script
+			Database.INIT_SCRIPTS.set("classpath:create_schema.sql");
+		}
+		else {
+			Path database = Path.of(DATABASE_DIRECTORY).resolve("llemmy").toAbsolutePath();
+			Database.URL.set("jdbc:h2:file:" + database +
+							";CACHE_SIZE=" + DATABASE_CACHE_SIZE +
+							";WRITE_DELAY=" + DATABASE_WRITE_DELAY +
+							// Queued chats are written on shutdown, keep the database open until then
+							";DB_CLOSE_ON_EXIT=FALSE");
+			// H2 adds the .mv.db extension to the database file
+			if (!Files.exists(database.resolveSibling(database.getFileName() + ".mv.db"))) {
+				Database.INIT_SCRIPTS.set("classpath:create_schema.sql");
+			}
+			else {
+				Database.INIT_SCRIPTS.set("classpath:upgrade_schema.sql");
+			}
+		}
+	}
+
+	/**
+	 * Starts Llemmy, without response streaming.
+	 * @param chatModels supplies the chat models
+	 */
 	public static void start(Supplier<List<ChatModel>> chatModels) {
+		start(chatModels, chatModel -> null);
+	}
+
+	/**
+	 * Starts Llemmy, streaming the responses from chat
+	 * models for which a streaming counterpart is provided.
+	 * @param chatModels supplies the chat models
+	 * @param streamingChatModels provides the streaming counterpart of a chat model, null if streaming is not supported
+	 */
+	public static void start(Supplier<List<ChatModel>> chatModels,
+													 Function<ChatModel, StreamingChatModel> streamingChatModels) {
 		requireNonNull(chatModels, "chatModels is null");
-		// Configure the jdbc URL ('codion.db.url')
-		Database.URL.set("jdbc:h2:mem:h2db");
-		// and the database initialization script
-		Database.INIT_SCRIPTS.set("classpath:create_schema.sql");
+		requireNonNull(streamingChatModels, "streamingChatModels is null");
+		configureDatabase();
 		// Configure FlatLaf related things, the inspector is not necessary
 		// but very helpful when debugging UI related stuff
 		FlatInspector.install("ctrl shift alt X");
@@ -179,7 +323,7 @@ public final class LlemmyApp extends EntityApplicationPanel<LlemmyApp.LlemmyAppM
 						// the application model, so here we provide a factory,
 						// which receives the EntityConnectionProvider from above
 						.model(connectionProvider ->
-										new LlemmyAppModel(chatModels.get(), connectionProvider))
+										new LlemmyAppModel(chatModels.get(), streamingChatModels, connectionProvider))
 						// We provide a factory for the panel instantiation,
 						// which receives the LlemmyAppModel from above,
 						// allowing us to keep the constructor private
@@ -197,13 +341,18 @@ public final class LlemmyApp extends EntityApplicationPanel<LlemmyApp.LlemmyAppM
 						Version.parse(LlemmyAppModel.class, "/version.properties");
 
 		private LlemmyAppModel(List<ChatModel> chatModels,
+													 Function<ChatModel, StreamingChatModel> streamingChatModels,
 													 EntityConnectionProvider connectionProvider) {
-			super(connectionProvider, List.of(new EntityChatModel(chatModels, connectionProvider)));
+			super(connectionProvider, List.of(new EntityChatModel(chatModels, streamingChatModels, connectionProvider)));
 		}
 
 		private EntityChatModel chatModel() {
 			return (EntityChatModel) entityModels().get(Chat.TYPE);
 		}
+
+		private EntityChatEditModel chatEditModel() {
+			return (EntityChatEditModel) chatModel().editModel();
+		}
 	}
 }
 // end::app_panel[]
\ No newline at end of file
@@ -25,6 +25,7 @@ import is.codion.framework.domain.entity.EntityType;
 import is.codion.framework.domain.entity.attribute.Attribute;
 import is.codion.framework.domain.entity.attribute.Column;
 import is.codion.framework.domain.entity.attribute.Column.Converter;
+import is.codion.framework.domain.entity.attribute.ForeignKey;
 
 import dev.langchain4j.data.message.ChatMessageType;
 
@@ -48,6 +49,8 @@ public final class Llemmy extends DomainModel {
 	public Llemmy() {
 		super(DOMAIN);
 		chat();
+		attachment();
+		chatAttachment();
 	}
 	// end::llemmy[]
 
@@ -73,12 +76,43 @@ public final class Llemmy extends DomainModel {
 		Column<Integer> INPUT_TOKENS = TYPE.integerColumn("input_tokens");
 		Column<Integer> OUTPUT_TOKENS = TYPE.integerColumn("output_tokens");
 		Column<Integer> TOTAL_TOKENS = TYPE.integerColumn("total_tokens");
+		// True if the response was served from the response cache
+		Column<Boolean> CACHED = TYPE.booleanColumn("cached");
+		// The number of model calls made for the response, including retries
+		Column<Integer> ATTEMPTS = TYPE.integerColumn("attempts");
 		Column<String> JSON = TYPE.stringColumn("json");
+		// The user message a response originates from
+		Column<Integer> PARENT_ID = TYPE.integerColumn("parent_id");
 		// For implementing soft-delete
 		Column<Boolean> DELETED = TYPE.booleanColumn("deleted");
 	}
 	// end::chat_api[]
 
+	// tag::attachment_api[]
+	// Attachment contents, stored once regardless of how often they are attached
+	public interface Attachment {
+		EntityType TYPE = DOMAIN.entityType("llemmy.attachment");
+
+		// The SHA-256 hash of the content, as the primary key
+		Column<String> HASH = TYPE.stringColumn("hash");
+		Column<String> NAME = TYPE.stringColumn("name");
+		Column<String> MIME_TYPE = TYPE.stringColumn("mime_type");
+		Column<Long> SIZE = TYPE.longColumn("size");
+		Column<byte[]> DATA = TYPE.byteArrayColumn("data");
+	}
+
+	// Links chat messages to their attachments
+	public interface ChatAttachment {
+		EntityType TYPE = DOMAIN.entityType("llemmy.chat_attachment");
+
+		Column<Integer> CHAT_ID = TYPE.integerColumn("chat_id");
+		Column<String> ATTACHMENT_HASH = TYPE.stringColumn("attachment_hash");
+
+		ForeignKey CHAT_FK = TYPE.foreignKey("chat_fk", CHAT_ID, Chat.ID);
+		ForeignKey ATTACHMENT_FK = TYPE.foreignKey("attachment_fk", ATTACHMENT_HASH, Attachment.HASH);
+	}
+	// end::attachment_api[]
+
 	// tag::chat_impl[]
 	private void chat() {
 		add(Chat.TYPE.as(
@@ -129,9 +163,21 @@ public final class Llemmy extends DomainModel {
 										Chat.TOTAL_TOKENS.as()
 														.column()
 														.caption("Total tokens"),
+										Chat.CACHED.as()
+														.column()
+														.nullable(false)
+														.caption("Cached")
+														.defaultValue(false)
+														.withDefault(true),
+										Chat.ATTEMPTS.as()
+														.column()
+														.caption("Attempts"),
 										Chat.JSON.as()
 														.column()
 														.caption("JSON"),
+										Chat.PARENT_ID.as()
+														.column()
+														.caption("Parent id"),
 										Chat.DELETED.as()
 														.column()
 														.nullable(false)
@@ -146,12 +192,60 @@ public final class Llemmy extends DomainModel {
 										.text(": ")
 										.value(Chat.MESSAGE)
 										.build())
-						.orderBy(descending(Chat.TIMESTAMP))
+						.orderBy(descending(Chat.TIMESTAMP, Chat.ID))
 						.caption("Chat Log")
 						.build());
 	}
 
-	private static final class MessageTypeConverter implements Converter<ChatMessageType, String> {
+	// tag::attachment_impl[]
+	private void attachment() {
+		add(Attachment.TYPE.as(
+										Attachment.HASH.as()
+														.primaryKey()
+														.maximumLength(64)
+														.caption("Hash"),
+										Attachment.NAME.as()
+														.column()
+														.nullable(false)
+														.caption("Name"),
+										Attachment.MIME_TYPE.as()
+														.column()
+														.nullable(false)
+														.maximumLength(50)
+														.caption("Mime type"),
+										Attachment.SIZE.as()
+														.column()
+														.nullable(false)
+														.caption("Size"),
+										Attachment.DATA.as()
+														.column()
+														.nullable(false)
+														.caption("Data"))
+						.formatter(EntityFormatter.builder()
+										.value(Attachment.NAME)
+										.build())
+						.caption("Attachment")
+						.build());
+	}
+
+	private void chatAttachment() {
+		add(ChatAttachment.TYPE.as(
+										ChatAttachment.CHAT_ID.as()
+														.primaryKey(0),
+										ChatAttachment.CHAT_FK.as()
+														.foreignKey()
+														.caption("Chat"),
+										ChatAttachment.ATTACHMENT_HASH.as()
+														.primaryKey(1),
+										ChatAttachment.ATTACHMENT_FK.as()
+														.foreignKey()
+														.caption("Attachment"))
+						.caption("Chat attachment")
+						.build());
+	}
+	// end::attachment_impl[]
+
+	static final class MessageTypeConverter implements Converter<ChatMessageType, String> {
 
 		@Override
 		public String toColumn(ChatMessageType chatMessageType, Statement statement) throws SQLException {
@@ -164,7 +258,7 @@ public final class Llemmy extends DomainModel {
 		}
 	}
 
-	private static class DurationConverter implements Converter<Duration, Integer> {
+	static final class DurationConverter implements Converter<Duration, Integer> {
 
 		@Override
 		public Integer toColumn(Duration duration, Statement statement) throws SQLException {
@@ -0,0 +1,224 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import is.codion.demos.llemmy.model.EntityChatEditModel.MimeType;
+
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.ImageContent;
+import dev.langchain4j.data.message.PdfFileContent;
+import dev.langchain4j.data.message.TextContent;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.function.IntConsumer;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Loads attachments, reading the files in chunks and encoding them incrementally.
+ * The size limits, and the available memory, are checked before anything is allocated.
+ * The memory required is reserved up front, shared by all loaders, so that concurrent
+ * loads can not together exceed the available memory.
+ */
+final class AttachmentLoader {
+
+	// The default maximum size of a single attachment
+	static final long MAXIMUM_SIZE = Long.getLong("llemmy.attachment.maximumSize", 16 * 1024 * 1024);
+	// The default maximum total size of the attachments of a single prompt
+	static final long MAXIMUM_TOTAL_SIZE = Long.getLong("llemmy.attachment.maximumTotalSize", 32 * 1024 * 1024);
+
+	private static final Base64.Encoder BASE64_ENCODER = Base64.getEncoder();
+	// A multiple of three, so each chunk encodes without padding
+	private static final int CHUNK_SIZE = 3 * 8 * 1024;
+
+	// The memory reserved by the attachments currently being loaded, guarded by the class
+	private static long reserved = 0;
+
+	private final long maximumSize;
+	private final long maximumTotalSize;
+
+	AttachmentLoader() {
+		this(MAXIMUM_SIZE, MAXIMUM_TOTAL_SIZE);
+	}
+
+	AttachmentLoader(long maximumSize, long maximumTotalSize) {
+		this.maximumSize = maximumSize;
+		this.maximumTotalSize = maximumTotalSize;
+	}
+
+	/**
+	 * Validates the size of the given file, before anything is loaded.
+	 * @param path the file to attach
+	 * @param totalSize the total size of the attachments already added
+	 * @return the file size
+	 * @throws IllegalArgumentException in case the file exceeds the size limits
+	 */
+	long validate(Path path, long totalSize) {
+		try {
+			long size = Files.size(path);
+			if (size > maximumSize) {
+				throw new IllegalArgumentException(format("%s exceeds the maximum attachment size of %s",
+								path.getFileName(), megabytes(maximumSize)));
+			}
+			if (totalSize + size > maximumTotalSize) {
+				throw new IllegalArgumentException(format("%s exceeds the maximum total attachment size of %s",
+								path.getFileName(), megabytes(maximumTotalSize)));
+			}
+
+			return size;
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @param path the file to load
+	 * @param mimeType the mime type
+	 * @param size the file size
+	 * @param digest updated with the file contents, when Base64 encoded
+	 * @param progress receives the loading progress, in percent
+	 * @return the file content
+	 * @throws IllegalArgumentException in case the file exceeds the available memory
+	 * @throws IOException in case of an exception, such as when the loading thread is interrupted
+	 */
+	Content load(Path path, MimeType mimeType, long size, MessageDigest digest, IntConsumer progress) throws IOException {
+		// The encoded bytes and the resulting string
+		long required = 2 * encodedLength(size);
+		if (required > Integer.MAX_VALUE || !reserve(required)) {
+			throw new IllegalArgumentException(format("Not enough memory available to attach %s (%s)",
+							path.getFileName(), megabytes(size)));
+		}
+		try {
+			return switch (mimeType) {
+				case PNG, JPEG -> ImageContent.from(toBase64(path, size, digest, progress), mimeType.type());
+				case PLAIN_TEXT -> TextContent.from(Files.readString(path, UTF_8));
+				case PDF -> PdfFileContent.from(toBase64(path, size, digest, progress), mimeType.type());
+			};
+		}
+		finally {
+			// The content is now part of the used memory
+			release(required);
+		}
+	}
+
+	/**
+	 * Encodes the given file, reading it in chunks, directly into a byte array
+	 * of the final encoded length, which is then copied once, when creating the string.
+	 * @param path the file to encode
+	 * @param size the file size
+	 * @param digest updated with the file contents
+	 * @param progress receives the encoding progress, in percent
+	 * @return the Base64 encoded file contents
+	 * @throws IOException in case of an exception, or in case the file size changed while being read
+	 */
+	static String toBase64(Path path, long size, MessageDigest digest, IntConsumer progress) throws IOException {
+		byte[] encoded = new byte[(int) encodedLength(size)];
+		try (FileChannel channel = FileChannel.open(path);
+				 OutputStream output = BASE64_ENCODER.wrap(new ArrayOutputStream(encoded))) {
+			ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+			long read = 0;
+			while (channel.read(buffer) != -1) {
+				if (read + buffer.position() > size) {
+					throw sizeChanged(path);
+				}
+				output.write(buffer.array(), 0, buffer.position());
+				digest.update(buffer.array(), 0, buffer.position());
+				read += buffer.position();
+				progress.accept((int) (100 * read / Math.max(size, 1)));
+				buffer.clear();
+			}
+			if (read != size) {
+				throw sizeChanged(path);
+			}
+		}
+
+		// Base64 is ASCII, so the string is stored compactly, one byte per character,
+		// the array is copied though, which is why twice the encoded length is required
+		return new String(encoded, ISO_8859_1);
+	}
+
+	private static IOException sizeChanged(Path path) {
+		return new IOException(format("%s was modified while being attached", path.getFileName()));
+	}
+
+	private static long encodedLength(long size) {
+		return 4 * ((size + 2) / 3);
+	}
+
+	/**
+	 * Reserves the given amount of memory, in case it is available, taking the
+	 * memory already reserved by the attachments being loaded into account.
+	 * @param bytes the number of bytes to reserve
+	 * @return true if the memory was reserved
+	 */
+	private static synchronized boolean reserve(long bytes) {
+		if (bytes > availableMemory() - reserved) {
+			return false;
+		}
+		reserved += bytes;
+
+		return true;
+	}
+
+	private static synchronized void release(long bytes) {
+		reserved -= bytes;
+	}
+
+	private static long availableMemory() {
+		Runtime runtime = Runtime.getRuntime();
+
+		return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+	}
+
+	private static String megabytes(long bytes) {
+		return format("%.1f MB", bytes / (1024d * 1024d));
+	}
+
+	private static final class ArrayOutputStream extends OutputStream {
+
+		private final byte[] bytes;
+
+		private int position = 0;
+
+		private ArrayOutputStream(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public void write(int b) {
+			bytes[position++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] source, int offset, int length) {
+			System.arraycopy(source, offset, bytes, position, length);
+			position += length;
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import is.codion.demos.llemmy.domain.Llemmy.Attachment;
+import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.demos.llemmy.domain.Llemmy.ChatAttachment;
+import is.codion.framework.db.EntityConnection;
+import is.codion.framework.domain.entity.Entity;
+
+import dev.langchain4j.data.image.Image;
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.ImageContent;
+import dev.langchain4j.data.message.PdfFileContent;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.pdf.PdfFile;
+
+import java.net.URI;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static dev.langchain4j.data.message.ChatMessageDeserializer.messageFromJson;
+import static dev.langchain4j.data.message.ChatMessageType.USER;
+import static is.codion.framework.db.EntityConnection.Select.where;
+
+/**
+ * Stores image and PDF attachment contents once, keyed by their SHA-256 hash.
+ * The chat JSON holds references to the stored contents, in the form of 'llemmy-attachment:{hash}' urls,
+ * which are resolved when needed.
+ */
+final class AttachmentStore {
+
+	private static final String SCHEME = "llemmy-attachment";
+
+	private static final Base64.Encoder BASE64_ENCODER = Base64.getEncoder();
+	private static final Base64.Decoder BASE64_DECODER = Base64.getDecoder();
+
+	// The contents referenced by messages not yet stored, mapped to their hash
+	private final Map<String, PendingContent> pending = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns a reference to the given content, which is stored along with
+	 * the first message referencing it, see {@link #store(Collection, EntityConnection)}.
+	 * @param hash the content hash
+	 * @param name the attachment name
+	 * @param size the attachment size
+	 * @param content the content
+	 * @return a reference to the content, or the content itself in case it is not an image or a PDF
+	 */
+	Content reference(String hash, String name, long size, Content content) {
+		URI reference = URI.create(SCHEME + ":" + hash);
+
+		return switch (content) {
+			case ImageContent image -> {
+				pending.put(hash, new PendingContent(name, image.image().mimeType(), size, image.image().base64Data()));
+				yield ImageContent.from(Image.builder()
+								.url(reference)
+								.mimeType(image.image().mimeType())
+								.build());
+			}
+			case PdfFileContent pdf -> {
+				pending.put(hash, new PendingContent(name, pdf.pdfFile().mimeType(), size, pdf.pdfFile().base64Data()));
+				yield PdfFileContent.from(PdfFile.builder()
+								.url(reference)
+								.mimeType(pdf.pdfFile().mimeType())
+								.build());
+			}
+			default -> content;
+		};
+	}
+
+	/**
+	 * Stores the contents referenced by the given user messages, unless already stored,
+	 * and links the messages to their attachments. The contents remain pending until
+	 * the transaction has been committed, see {@link #written(Entity)}.
+	 * @param chats the inserted chats
+	 * @param connection the connection to use
+	 */
+	void store(Collection<Entity> chats, EntityConnection connection) {
+		for (Entity chat : chats) {
+			if (chat.get(Chat.MESSAGE_TYPE) == USER && chat.get(Chat.JSON) != null) {
+				for (String hash : hashes((UserMessage) messageFromJson(chat.get(Chat.JSON)))) {
+					PendingContent content = pending.get(hash);
+					if (stored(hash, connection) || (content != null && insert(hash, content, connection))) {
+						link(chat, hash, connection);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Discards the pending contents referenced by the given user message, once committed.
+	 * @param chat the written chat
+	 */
+	void written(Entity chat) {
+		if (chat.get(Chat.MESSAGE_TYPE) == USER && chat.get(Chat.JSON) != null) {
+			hashes((UserMessage) messageFromJson(chat.get(Chat.JSON))).forEach(pending::remove);
+		}
+	}
+
+	/**
+	 * @param message the message
+	 * @return the hashes of the contents referenced by the given message
+	 */
+	static Set<String> hashes(UserMessage message) {
+		Set<String> hashes = new LinkedHashSet<>();
+		message.contents().forEach(content -> hash(content).ifPresent(hashes::add));
+
+		return hashes;
+	}
+
+	/**
+	 * Fetches the stored attachment contents, without the data
+	 * @param hashes the attachment hashes
+	 * @param connection the connection to use
+	 * @return the attachments with the given hashes
+	 */
+	static List<Entity> attachments(Collection<String> hashes, EntityConnection connection) {
+		return connection.select(where(Attachment.HASH.in(hashes))
+						.attributes(Attachment.NAME, Attachment.MIME_TYPE, Attachment.SIZE)
+						.build());
+	}
+
+	/**
+	 * Loads the stored content with the given hash
+	 * @param hash the content hash
+	 * @param connection the connection to use
+	 * @return the content
+	 */
+	static Content load(String hash, EntityConnection connection) {
+		Entity attachment = connection.selectSingle(Attachment.HASH.equalTo(hash));
+		String mimeType = attachment.get(Attachment.MIME_TYPE);
+		String base64Data = BASE64_ENCODER.encodeToString(attachment.get(Attachment.DATA));
+		if (mimeType.equals(EntityChatEditModel.MimeType.PDF.type())) {
+			return PdfFileContent.from(base64Data, mimeType);
+		}
+
+		return ImageContent.from(base64Data, mimeType);
+	}
+
+	private static Optional<String> hash(Content content) {
+		URI url = switch (content) {
+			case ImageContent image -> image.image().url();
+			case PdfFileContent pdf -> pdf.pdfFile().url();
+			default -> null;
+		};
+
+		return url != null && SCHEME.equals(url.getScheme()) ?
+						Optional.of(url.getSchemeSpecificPart()) : Optional.empty();
+	}
+
+	private static boolean stored(String hash, EntityConnection connection) {
+		return !connection.select(where(Attachment.HASH.equalTo(hash))
+						.attributes(Attachment.HASH)
+						.build()).isEmpty();
+	}
+
+	/**
+	 * Inserts the given content, unless it has been stored by another connection in the meantime.
+	 * @return true if the content is stored
+	 */
+	private static boolean insert(String hash, PendingContent content, EntityConnection connection) {
+		try {
+			connection.insert(connection.entities().entity(Attachment.TYPE)
+							.with(Attachment.HASH, hash)
+							.with(Attachment.NAME, content.name())
+							.with(Attachment.MIME_TYPE, content.mimeType())
+							.with(Attachment.SIZE, content.size())
+							.with(Attachment.DATA, BASE64_DECODER.decode(content.base64Data()))
+							.build());
+
+			return true;
+		}
+		catch (RuntimeException e) {
+			// The primary key is violated in case the same content was stored concurrently,
+			// the failed statement does not roll back the transaction
+			if (stored(hash, connection)) {
+				return true;
+			}
+			throw e;
+		}
+	}
+
+	private static void link(Entity chat, String hash, EntityConnection connection) {
+		connection.insert(connection.entities().entity(ChatAttachment.TYPE)
+						.with(ChatAttachment.CHAT_ID, chat.get(Chat.ID))
+						.with(ChatAttachment.ATTACHMENT_HASH, hash)
+						.build());
+	}
+
+	private record PendingContent(String name, String mimeType, long size, String base64Data) {}
+}
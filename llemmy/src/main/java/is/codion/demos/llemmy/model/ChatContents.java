@@ -0,0 +1,169 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.framework.db.EntityConnectionProvider;
+import is.codion.framework.domain.entity.Entity;
+import is.codion.framework.domain.entity.attribute.Column;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static is.codion.framework.db.EntityConnection.Select.where;
+
+/**
+ * A size bounded, least recently used, cache of the heavy chat columns,
+ * which are excluded from the history query and fetched on demand.
+ * Rendering fetches only the message, bypassing the cache.
+ * Only accessed on the Event Dispatch Thread.
+ */
+final class ChatContents {
+
+	// The columns excluded from the history query
+	static final List<Column<?>> COLUMNS = List.of(Chat.MESSAGE, Chat.STACK_TRACE, Chat.JSON);
+	// The maximum number of chats fetched per query when rendering
+	private static final int CHUNK_SIZE = 100;
+
+	private final EntityConnectionProvider connectionProvider;
+	// The chats including the heavy columns, mapped to the chat id
+	private final Map<Integer, Entity> chats;
+
+	/**
+	 * @param connectionProvider the connection provider
+	 * @param maximumSize the maximum number of chats to keep
+	 */
+	ChatContents(EntityConnectionProvider connectionProvider, int maximumSize) {
+		this.connectionProvider = connectionProvider;
+		this.chats = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Entity> eldest) {
+				return size() > maximumSize;
+			}
+		};
+	}
+
+	/**
+	 * Caches the heavy columns of the given chat, displayed without them
+	 * @param chat the chat
+	 */
+	void put(Entity chat) {
+		chats.put(chat.get(Chat.ID), chat);
+	}
+
+	/**
+	 * @param chat the chat to remove from the cache
+	 */
+	void remove(Entity chat) {
+		chats.remove(chat.get(Chat.ID));
+	}
+
+	/**
+	 * @param chat the chat
+	 * @return the chat including the heavy columns
+	 */
+	Entity get(Entity chat) {
+		return get(List.of(chat)).getFirst();
+	}
+
+	/**
+	 * Fetches the heavy columns of the given chats, in a single query, unless already available.
+	 * @param chats the chats
+	 * @return the chats including the heavy columns, in the same order
+	 */
+	List<Entity> get(List<Entity> chats) {
+		List<Integer> missing = chats.stream()
+						.filter(chat -> !loaded(chat) && !this.chats.containsKey(chat.get(Chat.ID)))
+						.map(chat -> chat.get(Chat.ID))
+						.toList();
+		Map<Integer, Entity> fetched = new LinkedHashMap<>();
+		if (!missing.isEmpty()) {
+			connectionProvider.connection().select(where(Chat.ID.in(missing)).build())
+							.forEach(chat -> fetched.put(chat.get(Chat.ID), chat));
+			this.chats.putAll(fetched);
+		}
+
+		return chats.stream()
+						.map(chat -> contents(chat, fetched))
+						.toList();
+	}
+
+	/**
+	 * Fetches only the columns required to format the given chats, that is the message,
+	 * in chunks of {@link #CHUNK_SIZE}, unless already available. The result is not cached,
+	 * since the caller keeps the formatted text, and is fetched only once per chat.
+	 * @param chats the chats
+	 * @return the chats including the message, in the same order
+	 */
+	List<Entity> messages(List<Entity> chats) {
+		List<Integer> missing = chats.stream()
+						.filter(chat -> !chat.contains(Chat.MESSAGE) && !this.chats.containsKey(chat.get(Chat.ID)))
+						.map(chat -> chat.get(Chat.ID))
+						.toList();
+		Map<Integer, Entity> fetched = new HashMap<>();
+		for (int from = 0; from < missing.size(); from += CHUNK_SIZE) {
+			connectionProvider.connection().select(where(Chat.ID.in(missing.subList(from, Math.min(from + CHUNK_SIZE, missing.size()))))
+											// The primary key is always included
+											.attributes(Chat.TIMESTAMP, Chat.NAME, Chat.MESSAGE)
+											.build())
+							.forEach(chat -> fetched.put(chat.get(Chat.ID), chat));
+		}
+
+		return chats.stream()
+						.map(chat -> message(chat, fetched))
+						.toList();
+	}
+
+	private Entity message(Entity chat, Map<Integer, Entity> fetched) {
+		if (chat.contains(Chat.MESSAGE)) {
+			return chat;
+		}
+		Integer id = chat.get(Chat.ID);
+		Entity message = fetched.get(id);
+		if (message == null) {
+			message = chats.get(id);
+		}
+
+		// Removed in the meantime
+		return message == null ? chat : message;
+	}
+
+	private Entity contents(Entity chat, Map<Integer, Entity> fetched) {
+		Integer id = chat.get(Chat.ID);
+		if (loaded(chat)) {
+			// Inserted or updated, replaces any stale contents
+			chats.put(id, chat);
+
+			return chat;
+		}
+		Entity contents = fetched.get(id);
+		if (contents == null) {
+			contents = chats.get(id);
+		}
+
+		// Removed in the meantime
+		return contents == null ? chat : contents;
+	}
+
+	private static boolean loaded(Entity chat) {
+		return COLUMNS.stream().allMatch(chat::contains);
+	}
+}
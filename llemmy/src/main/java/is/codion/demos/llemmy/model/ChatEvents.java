@@ -0,0 +1,213 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events, covering each stage of sending a prompt, correlated by the request id.
+ * The events are only committed while a recording is in progress, see llemmy.jfc.
+ */
+public final class ChatEvents {
+
+	private static final String CATEGORY = "Llemmy";
+
+	private ChatEvents() {}
+
+	@Name("llemmy.AttachmentLoad")
+	@Label("Attachment Load")
+	@Description("Reading, encoding and hashing an attachment")
+	@Category({CATEGORY, "Attachment"})
+	@StackTrace(false)
+	static final class AttachmentLoad extends Event {
+
+		@Label("Path")
+		String path;
+
+		@Label("Size")
+		@DataAmount
+		long size;
+
+		@Label("Mime Type")
+		String mimeType;
+	}
+
+	@Name("llemmy.Send")
+	@Label("Send")
+	@Description("Building and serializing the user message, on the Event Dispatch Thread")
+	@Category({CATEGORY, "Request"})
+	@StackTrace(false)
+	static final class Send extends Event {
+
+		@Label("Request Id")
+		long requestId;
+
+		@Label("Attachments")
+		int attachments;
+	}
+
+	@Name("llemmy.Dispatch")
+	@Label("Dispatch")
+	@Description("The handoff from the Event Dispatch Thread to the request thread")
+	@Category({CATEGORY, "Request"})
+	@StackTrace(false)
+	static final class Dispatch extends Event {
+
+		@Label("Request Id")
+		long requestId;
+	}
+
+	@Name("llemmy.Memory")
+	@Label("Conversation Memory")
+	@Description("Waiting for the prior chats to be written and reading the conversation memory")
+	@Category({CATEGORY, "Request"})
+	@StackTrace(false)
+	static final class Memory extends Event {
+
+		@Label("Request Id")
+		long requestId;
+
+		@Label("Messages")
+		int messages;
+	}
+
+	@Name("llemmy.RateLimitWait")
+	@Label("Rate Limit Wait")
+	@Description("Waiting for the rate limits of a model")
+	@Category({CATEGORY, "Model"})
+	@StackTrace(false)
+	static final class RateLimitWait extends Event {
+
+		@Label("Request Id")
+		long requestId;
+
+		@Label("Model")
+		String model;
+	}
+
+	@Name("llemmy.ModelCall")
+	@Label("Model Call")
+	@Description("A single call to a model, a request may make several, due to retries and failover")
+	@Category({CATEGORY, "Model"})
+	@StackTrace(false)
+	static final class ModelCall extends Event {
+
+		@Label("Request Id")
+		long requestId;
+
+		@Label("Model")
+		String model;
+
+		@Label("Streamed")
+		boolean streamed;
+
+		@Label("Input Tokens")
+		int inputTokens;
+
+		@Label("Output Tokens")
+		int outputTokens;
+
+		@Label("Outcome")
+		String outcome;
+	}
+
+	@Name("llemmy.ResponseEntity")
+	@Label("Response Entity")
+	@Description("Creating the response entity, including serializing the response")
+	@Category({CATEGORY, "Request"})
+	@StackTrace(false)
+	static final class ResponseEntity extends Event {
+
+		@Label("Request Id")
+		long requestId;
+
+		@Label("Model")
+		String model;
+	}
+
+	@Name("llemmy.ChatInsert")
+	@Label("Chat Insert")
+	@Description("Inserting a chat, within the transaction of a batch")
+	@Category({CATEGORY, "Database"})
+	@StackTrace(false)
+	static final class ChatInsert extends Event {
+
+		@Label("Request Id")
+		long requestId;
+
+		@Label("Message Type")
+		String messageType;
+	}
+
+	@Name("llemmy.ChatBatch")
+	@Label("Chat Batch")
+	@Description("Writing a batch of chats, in a single transaction")
+	@Category({CATEGORY, "Database"})
+	@StackTrace(false)
+	static final class ChatBatch extends Event {
+
+		@Label("Chats")
+		int chats;
+	}
+
+	@Name("llemmy.Request")
+	@Label("Request")
+	@Description("A request, from sending the prompt until the responses have been queued for writing")
+	@Category({CATEGORY, "Request"})
+	@StackTrace(false)
+	static final class Request extends Event {
+
+		@Label("Request Id")
+		long requestId;
+
+		@Label("Models")
+		String models;
+
+		@Label("Error")
+		boolean error;
+	}
+
+	/**
+	 * Emitted by the chat table panel
+	 */
+	@Name("llemmy.ChatRefresh")
+	@Label("Chat Refresh")
+	@Description("Refreshing the chat document, on the Event Dispatch Thread")
+	@Category({CATEGORY, "UI"})
+	@StackTrace(false)
+	public static final class ChatRefresh extends Event {
+
+		@Label("Request Id")
+		@Description("The request the written chat triggering the refresh belongs to, zero if none")
+		public long requestId;
+
+		@Label("Chats")
+		public int chats;
+
+		@Label("Formatted")
+		@Description("The number of chats formatted, as opposed to reused")
+		public int formatted;
+	}
+}
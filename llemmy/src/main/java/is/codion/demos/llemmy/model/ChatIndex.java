@@ -0,0 +1,400 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.demos.llemmy.model.ChatSearchModel.Highlight;
+import is.codion.framework.db.EntityConnectionProvider;
+import is.codion.framework.domain.entity.Entity;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.System.Logger;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static is.codion.framework.db.EntityConnection.Select.where;
+import static is.codion.framework.domain.entity.OrderBy.ascending;
+import static is.codion.framework.domain.entity.condition.Condition.and;
+import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.System.Logger.Level.INFO;
+
+/**
+ * A full-text index of the chat messages of all sessions, ranked by relevance (BM25), maintained
+ * incrementally as chats are inserted and soft deleted. Stored in a directory alongside a file
+ * based database, in memory otherwise. Chats written while the index was unavailable, such as
+ * by an earlier version or a crash, are indexed on startup. Thread safe, shared by all sessions.
+ */
+final class ChatIndex {
+
+	private static final Logger LOG = System.getLogger(ChatIndex.class.getName());
+
+	private static final String ID = "id";
+	private static final String MESSAGE = "message";
+	// The commit user data key, holding the highest chat id indexed
+	private static final String INDEXED = "indexed";
+	// The number of chats indexed at a time on startup
+	private static final int CATCH_UP_SIZE = 5_000;
+	// The number of chats added before the index is committed
+	private static final int COMMIT_SIZE = Integer.getInteger("llemmy.search.commitSize", 1_000);
+	// The maximum time in ms between commits, while chats are being added
+	private static final long COMMIT_INTERVAL = Long.getLong("llemmy.search.commitInterval", 60_000);
+	// The snippet length in characters
+	private static final int SNIPPET_LENGTH = 200;
+	// The number of characters preceding the first highlight in a snippet
+	private static final int SNIPPET_CONTEXT = 40;
+
+	// Stemming and stop words, so that "configuring kafka" matches "Kafka configuration"
+	private final Analyzer analyzer = new EnglishAnalyzer();
+	private final Directory directory;
+	private final IndexWriter writer;
+	private final SearcherManager searcherManager;
+	// The highest chat id indexed
+	private final AtomicInteger indexed;
+	// All chats up to this id have been indexed, advanced by the catch up on startup
+	private final AtomicInteger caughtUpTo;
+	private final AtomicBoolean catchingUp = new AtomicBoolean();
+	// The number of chats added since the last commit
+	private final AtomicInteger uncommitted = new AtomicInteger();
+
+	private volatile boolean caughtUp = false;
+	private volatile long lastCommit = System.currentTimeMillis();
+
+	/**
+	 * @param directory the index directory, null for an in-memory index
+	 * @throws UncheckedIOException in case the index could not be opened
+	 */
+	ChatIndex(Path directory) {
+		try {
+			this.directory = directory == null ? new ByteBuffersDirectory() : FSDirectory.open(directory);
+			this.indexed = new AtomicInteger(committed(this.directory));
+			this.caughtUpTo = new AtomicInteger(indexed.get());
+			this.writer = new IndexWriter(this.directory, new IndexWriterConfig(analyzer)
+							// Keep the memory usage within the modest heap
+							.setRAMBufferSizeMB(8));
+			this.searcherManager = new SearcherManager(writer, null);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		// Commit on shutdown, the chats written after the last commit are indexed on startup
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+	}
+
+	/**
+	 * Indexes the chats written since the index was last committed, in the background,
+	 * only once, the first time this is called.
+	 * @param connectionProvider the connection provider
+	 */
+	void catchUp(EntityConnectionProvider connectionProvider) {
+		if (catchingUp.compareAndSet(false, true)) {
+			Thread.ofVirtual()
+							.name("llemmy-index")
+							.start(() -> catchUpFrom(connectionProvider));
+		}
+	}
+
+	/**
+	 * Adds or replaces the given chats in the index, committing it every {@link #COMMIT_SIZE} chats,
+	 * or in case {@link #COMMIT_INTERVAL} has passed since the last commit.
+	 * @param chats the chats, including the id and message
+	 */
+	void add(Collection<Entity> chats) {
+		try {
+			for (Entity chat : chats) {
+				Integer id = chat.get(Chat.ID);
+				String message = chat.get(Chat.MESSAGE);
+				if (message != null && !message.isBlank()) {
+					Document document = new Document();
+					document.add(new StringField(ID, id.toString(), Store.YES));
+					document.add(new TextField(MESSAGE, message, Store.NO));
+					writer.updateDocument(new Term(ID, id.toString()), document);
+				}
+				indexed.accumulateAndGet(id, Math::max);
+			}
+			// Limits the chats indexed again on startup, after a crash
+			if (uncommitted.addAndGet(chats.size()) >= COMMIT_SIZE || System.currentTimeMillis() - lastCommit >= COMMIT_INTERVAL) {
+				commit();
+			}
+		}
+		catch (Exception e) {
+			// Indexed on next startup, the chats have been written
+			LOG.log(ERROR, "Unable to index " + chats.size() + " chats", e);
+		}
+	}
+
+	/**
+	 * Removes the given chats from the index
+	 * @param chats the chats
+	 */
+	void delete(Collection<Entity> chats) {
+		try {
+			writer.deleteDocuments(chats.stream()
+							.map(chat -> new Term(ID, chat.get(Chat.ID).toString()))
+							.toArray(Term[]::new));
+		}
+		catch (Exception e) {
+			// Deleted chats are excluded when fetched, in case they remain in the index
+			LOG.log(ERROR, "Unable to remove " + chats.size() + " chats from the index", e);
+		}
+	}
+
+	/**
+	 * Parses the given search text, all terms are required by default, a term prefixed
+	 * with '-' is excluded, '|' separates alternatives and quotes enclose phrases.
+	 * @param text the search text
+	 * @return the query
+	 */
+	Query query(String text) {
+		SimpleQueryParser parser = new SimpleQueryParser(analyzer, MESSAGE);
+		parser.setDefaultOperator(BooleanClause.Occur.MUST);
+		Query query = parser.parse(text);
+
+		return query == null ? new MatchNoDocsQuery() : query;
+	}
+
+	/**
+	 * @param query the query
+	 * @param offset the number of hits to skip
+	 * @param count the maximum number of hits
+	 * @return the hits, best first
+	 */
+	Hits search(Query query, int offset, int count) {
+		try {
+			// Include the chats indexed since the last search
+			searcherManager.maybeRefresh();
+			IndexSearcher searcher = searcherManager.acquire();
+			try {
+				TopDocs topDocs = searcher.search(query, offset + count);
+				StoredFields storedFields = searcher.storedFields();
+				List<Hit> hits = new ArrayList<>(count);
+				for (int i = offset; i < topDocs.scoreDocs.length; i++) {
+					ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+					hits.add(new Hit(Integer.parseInt(storedFields.document(scoreDoc.doc, Set.of(ID)).get(ID)), scoreDoc.score));
+				}
+
+				return new Hits(hits, topDocs.totalHits.value(),
+								topDocs.totalHits.relation() == TotalHits.Relation.EQUAL_TO);
+			}
+			finally {
+				searcherManager.release(searcher);
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Finds the passage of the given message containing the most query terms.
+	 * @param query the query
+	 * @param message the message
+	 * @return the snippet, with the query terms highlighted
+	 */
+	Snippet snippet(Query query, String message) {
+		Set<Term> terms = new HashSet<>();
+		query.visit(QueryVisitor.termCollector(terms));
+		Set<String> texts = new HashSet<>();
+		terms.forEach(term -> texts.add(term.text()));
+		List<Highlight> matches = matches(message, texts);
+		int start = start(message, matches);
+		int end = Math.min(message.length(), start + SNIPPET_LENGTH);
+		String prefix = start > 0 ? "..." : "";
+		List<Highlight> highlights = matches.stream()
+						.filter(match -> match.start() >= start && match.end() <= end)
+						.map(match -> new Highlight(match.start() - start + prefix.length(), match.end() - start + prefix.length()))
+						.toList();
+
+		return new Snippet(prefix + message.substring(start, end).replace('\n', ' ') +
+						(end < message.length() ? "..." : ""), highlights);
+	}
+
+	/**
+	 * Commits the index
+	 */
+	synchronized void commit() {
+		try {
+			// Chats written after startup may have been indexed before the catch up finished
+			int committed = caughtUp ? indexed.get() : caughtUpTo.get();
+			uncommitted.set(0);
+			lastCommit = System.currentTimeMillis();
+			writer.setLiveCommitData(Map.of(INDEXED, String.valueOf(committed)).entrySet());
+			writer.commit();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void close() {
+		try {
+			commit();
+			searcherManager.close();
+			writer.close();
+			directory.close();
+		}
+		catch (Exception e) {
+			LOG.log(ERROR, "Unable to close the chat index", e);
+		}
+	}
+
+	private void catchUpFrom(EntityConnectionProvider connectionProvider) {
+		try {
+			int count = 0;
+			List<Entity> chats;
+			do {
+				chats = connectionProvider.connection().select(where(and(
+												Chat.ID.greaterThan(caughtUpTo.get()),
+												Chat.DELETED.equalTo(false)))
+								.attributes(Chat.ID, Chat.MESSAGE)
+								.orderBy(ascending(Chat.ID))
+								.limit(CATCH_UP_SIZE)
+								.build());
+				add(chats);
+				if (!chats.isEmpty()) {
+					caughtUpTo.set(chats.getLast().get(Chat.ID));
+				}
+				count += chats.size();
+			}
+			while (chats.size() == CATCH_UP_SIZE);
+			caughtUp = true;
+			if (count > 0) {
+				commit();
+				LOG.log(INFO, "Indexed {0} chats", count);
+			}
+		}
+		catch (Exception e) {
+			LOG.log(ERROR, "Unable to index the chat history", e);
+		}
+	}
+
+	/**
+	 * @return the offsets of the tokens in the given message matching the given terms
+	 */
+	private List<Highlight> matches(String message, Set<String> terms) {
+		List<Highlight> matches = new ArrayList<>();
+		try (TokenStream tokens = analyzer.tokenStream(MESSAGE, message)) {
+			CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+			OffsetAttribute offset = tokens.addAttribute(OffsetAttribute.class);
+			tokens.reset();
+			while (tokens.incrementToken()) {
+				if (terms.contains(term.toString())) {
+					matches.add(new Highlight(offset.startOffset(), offset.endOffset()));
+				}
+			}
+			tokens.end();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return matches;
+	}
+
+	/**
+	 * @return the start of the snippet window containing the most matches, at a word boundary
+	 */
+	private static int start(String message, List<Highlight> matches) {
+		int best = 0;
+		int bestCount = 0;
+		for (int i = 0; i < matches.size(); i++) {
+			int count = 0;
+			for (int j = i; j < matches.size() && matches.get(j).end() <= matches.get(i).start() + SNIPPET_LENGTH - SNIPPET_CONTEXT; j++) {
+				count++;
+			}
+			if (count > bestCount) {
+				bestCount = count;
+				best = matches.get(i).start();
+			}
+		}
+		int start = Math.max(0, best - SNIPPET_CONTEXT);
+		if (start > 0) {
+			int space = message.indexOf(' ', start);
+			if (space != -1 && space < best) {
+				start = space + 1;
+			}
+		}
+
+		return start;
+	}
+
+	private static int committed(Directory directory) throws IOException {
+		if (!DirectoryReader.indexExists(directory)) {
+			return 0;
+		}
+		String indexed = SegmentInfos.readLatestCommit(directory).getUserData().get(INDEXED);
+
+		return indexed == null ? 0 : Integer.parseInt(indexed);
+	}
+
+	/**
+	 * @param chatId the chat id
+	 * @param score the relevance
+	 */
+	record Hit(int chatId, float score) {}
+
+	/**
+	 * @param hits the hits
+	 * @param total the total number of hits, a lower bound unless exact
+	 * @param exact true if the total is exact
+	 */
+	record Hits(List<Hit> hits, long total, boolean exact) {}
+
+	/**
+	 * @param text the snippet text
+	 * @param highlights the highlighted query terms within the text
+	 */
+	record Snippet(String text, List<Highlight> highlights) {}
+}
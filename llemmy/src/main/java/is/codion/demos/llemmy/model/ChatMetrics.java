@@ -0,0 +1,276 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.System.Logger;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * Records the latency and throughput of each chat model, along with the time prompts wait before
+ * being sent and the time spent writing chats, exposed via JMX under the 'is.codion.demos.llemmy' domain.
+ * Recording is lock free, adding negligible overhead. Thread safe, shared by all sessions.
+ */
+public final class ChatMetrics implements ChatMetricsMXBean {
+
+	private static final Logger LOG = System.getLogger(ChatMetrics.class.getName());
+
+	private static final String DOMAIN = "is.codion.demos.llemmy";
+
+	private final Map<String, ModelMetrics> models = new ConcurrentHashMap<>();
+	// In microseconds
+	private final Histogram queueWait = new Histogram();
+	private final Histogram insertTime = new Histogram();
+
+	ChatMetrics() {
+		register(this, DOMAIN + ":type=ChatMetrics");
+	}
+
+	/**
+	 * @return a snapshot of the metrics of each model, ordered by name
+	 */
+	public List<Snapshot> models() {
+		return models.values().stream()
+						.map(ModelMetrics::snapshot)
+						.sorted(Comparator.comparing(Snapshot::model))
+						.toList();
+	}
+
+	/**
+	 * @return the time from sending a prompt until the first model call
+	 */
+	public Percentiles queueWait() {
+		return Percentiles.of(queueWait);
+	}
+
+	/**
+	 * @return the time for writing a batch of chats to the database
+	 */
+	public Percentiles insertTime() {
+		return Percentiles.of(insertTime);
+	}
+
+	@Override
+	public long getQueueWaitP50() {
+		return queueWait().p50().toMillis();
+	}
+
+	@Override
+	public long getQueueWaitP95() {
+		return queueWait().p95().toMillis();
+	}
+
+	@Override
+	public long getQueueWaitP99() {
+		return queueWait().p99().toMillis();
+	}
+
+	@Override
+	public long getInsertTimeP50() {
+		return insertTime().p50().toMillis();
+	}
+
+	@Override
+	public long getInsertTimeP95() {
+		return insertTime().p95().toMillis();
+	}
+
+	@Override
+	public long getInsertTimeP99() {
+		return insertTime().p99().toMillis();
+	}
+
+	void response(String model, long latencyNanos, int outputTokens) {
+		ModelMetrics metrics = model(model);
+		metrics.requests.increment();
+		metrics.latency.record(latencyNanos / 1_000);
+		metrics.outputTokens.add(outputTokens);
+		metrics.generationNanos.add(latencyNanos);
+	}
+
+	void firstToken(String model, long nanos) {
+		model(model).timeToFirstToken.record(nanos / 1_000);
+	}
+
+	void error(String model) {
+		ModelMetrics metrics = model(model);
+		metrics.requests.increment();
+		metrics.errors.increment();
+	}
+
+	void retry(String model) {
+		model(model).retries.increment();
+	}
+
+	void queueWait(long nanos) {
+		queueWait.record(nanos / 1_000);
+	}
+
+	void insertTime(long nanos) {
+		insertTime.record(nanos / 1_000);
+	}
+
+	private ModelMetrics model(String model) {
+		ModelMetrics metrics = models.get(model);
+		if (metrics == null) {
+			metrics = models.computeIfAbsent(model, name -> {
+				ModelMetrics created = new ModelMetrics(name);
+				register(created, DOMAIN + ":type=ModelMetrics,name=" + ObjectName.quote(name));
+
+				return created;
+			});
+		}
+
+		return metrics;
+	}
+
+	private static void register(Object mbean, String name) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, new ObjectName(name));
+		}
+		catch (JMException e) {
+			LOG.log(WARNING, "Unable to register MBean " + name, e);
+		}
+	}
+
+	/**
+	 * The 50th, 95th and 99th percentiles
+	 */
+	public record Percentiles(Duration p50, Duration p95, Duration p99) {
+
+		private static Percentiles of(Histogram histogram) {
+			return new Percentiles(percentile(histogram, 50), percentile(histogram, 95), percentile(histogram, 99));
+		}
+
+		private static Duration percentile(Histogram histogram, double percentile) {
+			return Duration.ofNanos(histogram.percentile(percentile) * 1_000);
+		}
+	}
+
+	/**
+	 * A snapshot of the metrics of a chat model
+	 * @param model the model name
+	 * @param requests the number of calls to the model, including retries
+	 * @param errors the number of failed calls
+	 * @param retries the number of retried calls
+	 * @param latency the latency of successful calls
+	 * @param timeToFirstToken the time to the first token, the latency when not streaming
+	 * @param outputTokensPerSecond the output tokens per second
+	 */
+	public record Snapshot(String model, long requests, long errors, long retries, Percentiles latency,
+												 Percentiles timeToFirstToken, double outputTokensPerSecond) {
+
+		public double errorRate() {
+			return requests == 0 ? 0 : (double) errors / requests;
+		}
+
+		public double retryRate() {
+			return requests == 0 ? 0 : (double) retries / requests;
+		}
+	}
+
+	private static final class ModelMetrics implements ModelMetricsMXBean {
+
+		private final String name;
+		private final LongAdder requests = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder retries = new LongAdder();
+		private final LongAdder outputTokens = new LongAdder();
+		private final LongAdder generationNanos = new LongAdder();
+		// In microseconds
+		private final Histogram latency = new Histogram();
+		private final Histogram timeToFirstToken = new Histogram();
+
+		private ModelMetrics(String name) {
+			this.name = name;
+		}
+
+		private Snapshot snapshot() {
+			long nanos = generationNanos.sum();
+
+			return new Snapshot(name, requests.sum(), errors.sum(), retries.sum(),
+							Percentiles.of(latency), Percentiles.of(timeToFirstToken),
+							nanos == 0 ? 0 : outputTokens.sum() * 1_000_000_000d / nanos);
+		}
+
+		@Override
+		public long getRequests() {
+			return requests.sum();
+		}
+
+		@Override
+		public long getErrors() {
+			return errors.sum();
+		}
+
+		@Override
+		public long getRetries() {
+			return retries.sum();
+		}
+
+		@Override
+		public double getErrorRate() {
+			return snapshot().errorRate();
+		}
+
+		@Override
+		public double getRetryRate() {
+			return snapshot().retryRate();
+		}
+
+		@Override
+		public long getLatencyP50() {
+			return Percentiles.of(latency).p50().toMillis();
+		}
+
+		@Override
+		public long getLatencyP95() {
+			return Percentiles.of(latency).p95().toMillis();
+		}
+
+		@Override
+		public long getLatencyP99() {
+			return Percentiles.of(latency).p99().toMillis();
+		}
+
+		@Override
+		public long getTimeToFirstTokenP50() {
+			return Percentiles.of(timeToFirstToken).p50().toMillis();
+		}
+
+		@Override
+		public long getTimeToFirstTokenP95() {
+			return Percentiles.of(timeToFirstToken).p95().toMillis();
+		}
+
+		@Override
+		public double getOutputTokensPerSecond() {
+			return snapshot().outputTokensPerSecond();
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+/**
+ * The metrics shared by all chat models, exposed via JMX, the times are in milliseconds.
+ */
+public interface ChatMetricsMXBean {
+
+	/**
+	 * @return the median time from sending a prompt until the first model call
+	 */
+	long getQueueWaitP50();
+
+	long getQueueWaitP95();
+
+	long getQueueWaitP99();
+
+	/**
+	 * @return the median time for writing a batch of chats to the database
+	 */
+	long getInsertTimeP50();
+
+	long getInsertTimeP95();
+
+	long getInsertTimeP99();
+}
@@ -0,0 +1,209 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import is.codion.common.reactive.observer.Observable;
+import is.codion.common.reactive.state.ObservableState;
+import is.codion.common.reactive.state.State;
+import is.codion.common.reactive.value.Value;
+import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.demos.llemmy.model.ChatIndex.Hit;
+import is.codion.demos.llemmy.model.ChatIndex.Hits;
+import is.codion.demos.llemmy.model.ChatIndex.Snippet;
+import is.codion.framework.db.EntityConnectionProvider;
+import is.codion.framework.domain.entity.Entity;
+import is.codion.swing.common.model.component.list.FilterListModel;
+
+import org.apache.lucene.search.Query;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static is.codion.framework.db.EntityConnection.Select.where;
+import static is.codion.framework.domain.entity.condition.Condition.and;
+import static java.lang.String.format;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Searches the chat messages of all sessions, presenting the results a page at a time,
+ * ordered by relevance, each with a snippet of the message highlighting the query terms.
+ * @see #query()
+ * @see #search()
+ */
+public final class ChatSearchModel {
+
+	// The number of results on each page
+	private static final int PAGE_SIZE = Integer.getInteger("llemmy.search.pageSize", 20);
+
+	private final ChatIndex index;
+	private final EntityConnectionProvider connectionProvider;
+	// Contains the search text
+	private final Value<String> query = Value.nonNull("");
+	// Contains the results on the current page
+	private final FilterListModel<SearchResult> results =
+					FilterListModel.builder()
+									.items(Collections.<SearchResult>emptyList())
+									.build();
+	// Indicates whether there is a next page
+	private final State next = State.state();
+	// Indicates whether there is a previous page
+	private final State previous = State.state();
+	// Describes the results, i.e. the number of hits and the time taken
+	private final Value<String> status = Value.nonNull("");
+
+	// The query of the current results
+	private Query searched;
+	// The current page, zero based
+	private int page;
+
+	ChatSearchModel(ChatIndex index, EntityConnectionProvider connectionProvider) {
+		this.index = index;
+		this.connectionProvider = connectionProvider;
+	}
+
+	/**
+	 * @return the {@link Value} controlling the search text
+	 */
+	public Value<String> query() {
+		return query;
+	}
+
+	/**
+	 * @return the search results on the current page, best first
+	 */
+	public FilterListModel<SearchResult> results() {
+		return results;
+	}
+
+	/**
+	 * @return an {@link ObservableState} indicating whether there is a next page
+	 */
+	public ObservableState next() {
+		return next.observable();
+	}
+
+	/**
+	 * @return an {@link ObservableState} indicating whether there is a previous page
+	 */
+	public ObservableState previous() {
+		return previous.observable();
+	}
+
+	/**
+	 * @return a description of the current results
+	 */
+	public Observable<String> status() {
+		return status.observable();
+	}
+
+	/**
+	 * Searches for the current query text, displaying the first page of results
+	 */
+	public void search() {
+		searched = query.get().isBlank() ? null : index.query(query.get());
+		page = 0;
+		refresh();
+	}
+
+	/**
+	 * Displays the next page of results
+	 */
+	public void nextPage() {
+		if (next.is()) {
+			page++;
+			refresh();
+		}
+	}
+
+	/**
+	 * Displays the previous page of results
+	 */
+	public void previousPage() {
+		if (previous.is()) {
+			page--;
+			refresh();
+		}
+	}
+
+	private void refresh() {
+		if (searched == null) {
+			results.items().clear();
+			next.set(false);
+			previous.set(false);
+			status.set("");
+			return;
+		}
+		long started = System.nanoTime();
+		Hits hits = index.search(searched, page * PAGE_SIZE, PAGE_SIZE);
+		List<SearchResult> found = results(hits.hits());
+		long elapsed = (System.nanoTime() - started) / 1_000_000;
+		results.items().set(found);
+		next.set((page + 1L) * PAGE_SIZE < hits.total());
+		previous.set(page > 0);
+		status.set(hits.total() == 0 ? format("No results, %d ms", elapsed) :
+						format("%s%d results, page %d of %d, %d ms", hits.exact() ? "" : "Over ", hits.total(),
+										page + 1, (hits.total() + PAGE_SIZE - 1) / PAGE_SIZE, elapsed));
+	}
+
+	private List<SearchResult> results(List<Hit> hits) {
+		if (hits.isEmpty()) {
+			return List.of();
+		}
+		// Chats deleted since they were indexed are not found
+		Map<Integer, Entity> chats = connectionProvider.connection().select(where(and(
+										Chat.ID.in(hits.stream()
+														.map(Hit::chatId)
+														.toList()),
+										Chat.DELETED.equalTo(false)))
+										// Only the displayed columns, the primary key is always included
+										.attributes(Chat.SESSION, Chat.TIMESTAMP, Chat.NAME, Chat.MESSAGE)
+										.build()).stream()
+						.collect(toMap(chat -> chat.get(Chat.ID), Function.identity()));
+
+		// Keep the relevance order
+		return hits.stream()
+						.filter(hit -> chats.containsKey(hit.chatId()))
+						.map(hit -> result(chats.get(hit.chatId()), hit.score()))
+						.toList();
+	}
+
+	private SearchResult result(Entity chat, float score) {
+		Snippet snippet = index.snippet(searched, chat.get(Chat.MESSAGE));
+
+		return new SearchResult(chat, score, snippet.text(), snippet.highlights());
+	}
+
+	/**
+	 * A chat matching the query.
+	 * @param chat the chat
+	 * @param score the relevance, higher is better
+	 * @param snippet the passage of the message best matching the query
+	 * @param highlights the query terms found within the snippet
+	 */
+	public record SearchResult(Entity chat, float score, String snippet, List<Highlight> highlights) {}
+
+	/**
+	 * A query term found within a snippet.
+	 * @param start the start index, inclusive
+	 * @param end the end index, exclusive
+	 */
+	public record Highlight(int start, int end) {}
+}
@@ -0,0 +1,276 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.framework.db.EntityConnection;
+import is.codion.framework.db.EntityConnectionProvider;
+import is.codion.framework.db.local.LocalEntityConnectionProvider;
+import is.codion.framework.domain.entity.Entity;
+import is.codion.framework.model.EntityPersistence;
+
+import java.lang.System.Logger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.System.Logger.Level.WARNING;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A write-behind queue, inserting the queued chats in batches, each within a single transaction,
+ * in the order they were queued. A batch is written when the flush interval has elapsed since
+ * the first chat was queued, when the flush size is reached or when a flush is requested.
+ * In case a batch fails, its chats are written one at a time, so that a single failing chat
+ * does not take the rest of the batch with it. Writes via a connection of its own, so that
+ * its transactions do not include the statements run on the Event Dispatch Thread, and vice versa.
+ * The queue is flushed when the writer is closed.
+ */
+final class ChatWriter {
+
+	private static final Logger LOG = System.getLogger(ChatWriter.class.getName());
+
+	// Identifies the queued chats until they have been written
+	private static final AtomicInteger TEMPORARY_ID = new AtomicInteger();
+
+	private final EntityConnectionProvider connectionProvider;
+	private final EntityPersistence persistence;
+	private final ChatMetrics metrics;
+	private final long flushInterval;
+	private final int flushSize;
+	private final BlockingQueue<QueuedChat> queue = new LinkedBlockingQueue<>();
+	private final Thread writer;
+
+	private volatile boolean closed = false;
+
+	/**
+	 * @param connectionProvider the connection provider, on which to base the connection provider of the writer
+	 * @param persistence the persistence used for inserting
+	 * @param metrics records the insert time
+	 * @param flushInterval the maximum time in ms a chat waits in the queue before being written
+	 * @param flushSize the maximum number of chats written in a single transaction
+	 * @throws IllegalArgumentException in case the connection provider is not a local one
+	 */
+	ChatWriter(EntityConnectionProvider connectionProvider, EntityPersistence persistence,
+						 ChatMetrics metrics, int flushInterval, int flushSize) {
+		this.connectionProvider = writerConnectionProvider(connectionProvider);
+		this.persistence = persistence;
+		this.metrics = metrics;
+		this.flushInterval = flushInterval * 1_000_000L;
+		this.flushSize = flushSize;
+		this.writer = Thread.ofPlatform()
+						.name("llemmy-writer")
+						.daemon(true)
+						.start(this::write);
+	}
+
+	/**
+	 * @return a negative id, identifying a queued chat until it has been written
+	 */
+	static int temporaryId() {
+		return -TEMPORARY_ID.incrementAndGet();
+	}
+
+	/**
+	 * Queues the given chat for writing
+	 * @param chat the chat to write
+	 * @param requestId the id of the request the chat belongs to
+	 * @return a future completed with the inserted chat when written
+	 * @throws IllegalStateException in case this writer has been closed
+	 */
+	CompletableFuture<Entity> write(Entity chat, long requestId) {
+		if (closed) {
+			throw new IllegalStateException("Chat writer has been closed");
+		}
+		QueuedChat queued = new QueuedChat(chat, requestId);
+		queue.add(queued);
+
+		return queued.inserted;
+	}
+
+	/**
+	 * Requests that all currently queued chats be written without delay.
+	 * @return a future completed when the currently queued chats have been written
+	 */
+	CompletableFuture<?> flush() {
+		if (closed) {
+			return CompletableFuture.completedFuture(null);
+		}
+		QueuedChat flush = new QueuedChat(null, 0);
+		queue.add(flush);
+
+		return flush.inserted;
+	}
+
+	/**
+	 * Writes all queued chats, stops the writer thread and closes the writer connection.
+	 */
+	void close() {
+		if (!closed) {
+			closed = true;
+			queue.add(new QueuedChat(null, 0));
+			try {
+				writer.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				connectionProvider.close();
+			}
+		}
+	}
+
+	private void write() {
+		while (!closed || !queue.isEmpty()) {
+			try {
+				write(batch());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Waits for the first chat and collects the ones following it, until the flush interval
+	 * has elapsed, the flush size has been reached or a flush has been requested.
+	 * @return the batch
+	 */
+	private List<QueuedChat> batch() throws InterruptedException {
+		List<QueuedChat> batch = new ArrayList<>();
+		QueuedChat queued = queue.take();
+		batch.add(queued);
+		long deadline = System.nanoTime() + flushInterval;
+		while (!queued.flush() && batch.size() < flushSize) {
+			queued = queue.poll(deadline - System.nanoTime(), NANOSECONDS);
+			if (queued == null) {
+				break;
+			}
+			batch.add(queued);
+		}
+
+		return batch;
+	}
+
+	private void write(List<QueuedChat> batch) {
+		List<QueuedChat> chats = batch.stream()
+						.filter(queued -> !queued.flush())
+						.toList();
+		if (!chats.isEmpty()) {
+			ChatEvents.ChatBatch event = new ChatEvents.ChatBatch();
+			event.begin();
+			try {
+				long started = System.nanoTime();
+				List<Entity> inserted = insert(chats);
+				metrics.insertTime(System.nanoTime() - started);
+				event.chats = chats.size();
+				event.commit();
+				for (int i = 0; i < chats.size(); i++) {
+					chats.get(i).inserted.complete(inserted.get(i));
+				}
+			}
+			catch (Exception e) {
+				if (chats.size() == 1) {
+					LOG.log(ERROR, "Unable to write chat", e);
+					chats.getFirst().inserted.completeExceptionally(e);
+				}
+				else {
+					LOG.log(WARNING, "Unable to write " + chats.size() + " chats, writing one at a time", e);
+					chats.forEach(this::write);
+				}
+			}
+		}
+		batch.stream()
+						.filter(QueuedChat::flush)
+						.forEach(flush -> flush.inserted.complete(null));
+	}
+
+	private void write(QueuedChat queued) {
+		try {
+			long started = System.nanoTime();
+			Entity inserted = insert(List.of(queued)).getFirst();
+			metrics.insertTime(System.nanoTime() - started);
+			queued.inserted.complete(inserted);
+		}
+		catch (Exception e) {
+			LOG.log(ERROR, "Unable to write chat", e);
+			queued.inserted.completeExceptionally(e);
+		}
+	}
+
+	private List<Entity> insert(List<QueuedChat> chats) {
+		EntityConnection connection = connectionProvider.connection();
+		connection.startTransaction();
+		try {
+			List<Entity> inserted = new ArrayList<>(chats.size());
+			for (QueuedChat queued : chats) {
+				ChatEvents.ChatInsert event = new ChatEvents.ChatInsert();
+				event.begin();
+				// One at a time, in order to keep the order
+				inserted.add(persistence.insert(List.of(queued.chat), connection).iterator().next());
+				if (event.shouldCommit()) {
+					event.requestId = queued.requestId;
+					event.messageType = queued.chat.get(Chat.MESSAGE_TYPE).name();
+					event.commit();
+				}
+			}
+			connection.commitTransaction();
+
+			return inserted;
+		}
+		catch (RuntimeException e) {
+			connection.rollbackTransaction();
+			throw e;
+		}
+	}
+
+	private static EntityConnectionProvider writerConnectionProvider(EntityConnectionProvider connectionProvider) {
+		if (connectionProvider instanceof LocalEntityConnectionProvider local) {
+			return LocalEntityConnectionProvider.builder()
+							.database(local.database())
+							.domain(local.domain())
+							.user(local.user())
+							.build();
+		}
+
+		throw new IllegalArgumentException("The chat writer requires a local connection provider");
+	}
+
+	private static final class QueuedChat {
+
+		private final Entity chat;
+		private final long requestId;
+		private final CompletableFuture<Entity> inserted = new CompletableFuture<>();
+
+		private QueuedChat(Entity chat, long requestId) {
+			this.chat = chat;
+			this.requestId = requestId;
+		}
+
+		private boolean flush() {
+			return chat == null;
+		}
+	}
+}
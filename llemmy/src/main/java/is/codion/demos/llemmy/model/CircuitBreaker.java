@@ -0,0 +1,99 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import java.time.Duration;
+
+/**
+ * A circuit breaker for a chat model, which opens after a number of consecutive failures,
+ * failing fast until the open duration has elapsed, after which a single trial call is allowed,
+ * closing the breaker on success and opening it again on failure. A trial call without an outcome,
+ * such as a cancelled one, must be released, allowing another trial call.
+ * Thread safe, shared by all sessions.
+ */
+final class CircuitBreaker {
+
+	private final int failureThreshold;
+	private final long openDuration;
+
+	private int failures = 0;
+	private long openedAt;
+	private boolean trial = false;
+	// The thread making the trial call, if any
+	private Thread trialThread;
+
+	/**
+	 * @param failureThreshold the number of consecutive failures opening the breaker
+	 * @param openDuration the duration the breaker stays open before allowing a trial call
+	 */
+	CircuitBreaker(int failureThreshold, Duration openDuration) {
+		this.failureThreshold = failureThreshold;
+		this.openDuration = openDuration.toNanos();
+	}
+
+	/**
+	 * @return true if a call is allowed, false if the breaker is open
+	 */
+	synchronized boolean allow() {
+		if (failures < failureThreshold) {
+			return true;
+		}
+		if (!trial && System.nanoTime() - openedAt >= openDuration) {
+			trial = true;
+			trialThread = Thread.currentThread();
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return true if the breaker is open, failing fast
+	 */
+	synchronized boolean open() {
+		return failures >= failureThreshold;
+	}
+
+	synchronized void success() {
+		failures = 0;
+		trial = false;
+		trialThread = null;
+	}
+
+	synchronized void failure() {
+		if (trial || ++failures >= failureThreshold) {
+			failures = failureThreshold;
+			openedAt = System.nanoTime();
+			trial = false;
+			trialThread = null;
+		}
+	}
+
+	/**
+	 * Releases a call made by the current thread without an outcome, such as a cancelled one,
+	 * allowing another trial call in case it was the trial call, has no effect otherwise.
+	 */
+	synchronized void release() {
+		if (trial && trialThread == Thread.currentThread()) {
+			trial = false;
+			trialThread = null;
+		}
+	}
+}
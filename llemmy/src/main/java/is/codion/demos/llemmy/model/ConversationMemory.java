@@ -0,0 +1,144 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.framework.db.EntityConnection;
+import is.codion.framework.db.EntityConnectionProvider;
+import is.codion.framework.domain.entity.Entity;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageType;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.UserMessage;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static dev.langchain4j.data.message.ChatMessageDeserializer.messageFromJson;
+import static dev.langchain4j.data.message.ChatMessageType.AI;
+import static dev.langchain4j.data.message.ChatMessageType.USER;
+import static is.codion.framework.db.EntityConnection.Select.where;
+import static is.codion.framework.domain.entity.OrderBy.descending;
+import static is.codion.framework.domain.entity.condition.Condition.and;
+
+/**
+ * Reconstructs the prior turns of a chat session from the stored {@link Chat#JSON} column,
+ * limited to the most recent messages fitting within a given token budget.
+ * Only the text content of user messages is remembered, attachments are not re-sent.
+ */
+final class ConversationMemory {
+
+	// A rough estimate, used when the token count is not known
+	static final int CHARACTERS_PER_TOKEN = 4;
+
+	private final EntityConnectionProvider connectionProvider;
+	private final UUID session;
+	// The deserialized messages in the current window, mapped to the chat id
+	private final Map<Integer, ChatMessage> messages = new ConcurrentHashMap<>();
+
+	ConversationMemory(EntityConnectionProvider connectionProvider, UUID session) {
+		this.connectionProvider = connectionProvider;
+		this.session = session;
+	}
+
+	/**
+	 * @param before only messages stored before this time are included
+	 * @param tokenBudget the maximum number of estimated tokens
+	 * @return the most recent messages fitting within the token budget, in chronological order
+	 */
+	List<ChatMessage> messages(LocalDateTime before, int tokenBudget) {
+		EntityConnection connection = connectionProvider.connection();
+		List<Integer> window = new ArrayList<>();
+		int tokens = 0;
+		// Start with the lightweight columns, newest first, and fill the token budget
+		for (Entity chat : connection.select(where(and(
+										Chat.SESSION.equalTo(session),
+										Chat.DELETED.equalTo(false),
+										Chat.MESSAGE_TYPE.in(USER, AI),
+										Chat.TIMESTAMP.lessThan(before)))
+						.attributes(Chat.MESSAGE_TYPE, Chat.MESSAGE, Chat.OUTPUT_TOKENS)
+						.orderBy(descending(Chat.TIMESTAMP))
+						.build())) {
+			String message = chat.get(Chat.MESSAGE);
+			// Skip messages without any text, such as attachment only prompts
+			if (message != null && !message.isBlank()) {
+				tokens += tokens(chat.get(Chat.MESSAGE_TYPE), message, chat.get(Chat.OUTPUT_TOKENS));
+				if (tokens > tokenBudget) {
+					break;
+				}
+				window.add(chat.get(Chat.ID));
+			}
+		}
+		// Collected locally, since concurrent requests may prune the shared messages
+		Map<Integer, ChatMessage> found = new HashMap<>();
+		List<Integer> missing = new ArrayList<>();
+		for (Integer id : window) {
+			ChatMessage message = messages.get(id);
+			if (message == null) {
+				missing.add(id);
+			}
+			else {
+				found.put(id, message);
+			}
+		}
+		if (!missing.isEmpty()) {
+			// and only deserialize the ones not already in memory
+			connection.select(where(Chat.ID.in(missing))
+											.attributes(Chat.JSON)
+											.build())
+							.forEach(chat -> found.put(chat.get(Chat.ID), textOnly(messageFromJson(chat.get(Chat.JSON)))));
+		}
+		// Discard messages that have fallen out of the window
+		messages.keySet().retainAll(window);
+		messages.putAll(found);
+		Collections.reverse(window);
+
+		return window.stream()
+						.map(found::get)
+						.toList();
+	}
+
+	private static int tokens(ChatMessageType messageType, String message, Integer outputTokens) {
+		if (messageType == AI && outputTokens != null) {
+			return outputTokens;
+		}
+
+		return message.length() / CHARACTERS_PER_TOKEN;
+	}
+
+	private static ChatMessage textOnly(ChatMessage message) {
+		if (message instanceof UserMessage userMessage && !userMessage.hasSingleText()) {
+			UserMessage.Builder builder = UserMessage.builder().name(userMessage.name());
+			userMessage.contents().stream()
+							.filter(TextContent.class::isInstance)
+							.forEach(builder::addContent);
+
+			return builder.build();
+		}
+
+		return message;
+	}
+}
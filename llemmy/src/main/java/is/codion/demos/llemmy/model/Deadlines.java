@@ -0,0 +1,103 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import dev.langchain4j.model.chat.ChatModel;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Provides the deadline for a request to a chat model, either a fixed one or one adapting
+ * to the observed latency of the model, based on a window of its recent response times.
+ * The fixed deadline is specified by the 'llemmy.deadline' system property, in seconds,
+ * and can be overridden for each model provider, i.e. 'llemmy.deadline.OLLAMA'.
+ * Thread safe, shared by all sessions.
+ */
+final class Deadlines {
+
+	private static final String DEADLINE = "llemmy.deadline";
+	// The number of recent response times kept for each model
+	private static final int WINDOW = 100;
+	// The number of response times required before the deadline adapts
+	private static final int MINIMUM_SAMPLES = 20;
+	// The adaptive deadline is this multiple of the observed 99th percentile
+	private static final int MULTIPLIER = 3;
+	// The adaptive deadline is never shorter than this
+	private static final Duration MINIMUM = Duration.ofSeconds(10);
+
+	private final int defaultSeconds;
+	private final Map<ChatModel, Deque<Long>> responseTimes = new HashMap<>();
+
+	/**
+	 * @param defaultSeconds the default fixed deadline in seconds
+	 */
+	Deadlines(int defaultSeconds) {
+		this.defaultSeconds = defaultSeconds;
+	}
+
+	/**
+	 * The adaptive deadline is bounded by the fixed one, which applies
+	 * until enough response times have been recorded for the model.
+	 * @param chatModel the chat model
+	 * @param adaptive true if the deadline should adapt to the observed latency
+	 * @return the deadline for a request to the given model
+	 */
+	Duration deadline(ChatModel chatModel, boolean adaptive) {
+		Duration fixed = Duration.ofSeconds(Integer.getInteger(DEADLINE + "." + chatModel.provider().name(), defaultSeconds));
+		if (!adaptive) {
+			return fixed;
+		}
+		long[] sorted;
+		synchronized (responseTimes) {
+			sorted = responseTimes.getOrDefault(chatModel, new ArrayDeque<>()).stream()
+							.mapToLong(Long::longValue)
+							.sorted()
+							.toArray();
+		}
+		if (sorted.length < MINIMUM_SAMPLES) {
+			return fixed;
+		}
+		Duration p99 = Duration.ofMillis(sorted[(int) Math.ceil(0.99 * sorted.length) - 1]);
+		Duration adapted = p99.multipliedBy(MULTIPLIER);
+		if (adapted.compareTo(MINIMUM) < 0) {
+			return MINIMUM;
+		}
+
+		return adapted.compareTo(fixed) > 0 ? fixed : adapted;
+	}
+
+	/**
+	 * Records the response time of a successful request
+	 * @param chatModel the chat model
+	 * @param responseTime the response time
+	 */
+	void record(ChatModel chatModel, Duration responseTime) {
+		synchronized (responseTimes) {
+			Deque<Long> times = responseTimes.computeIfAbsent(chatModel, model -> new ArrayDeque<>(WINDOW));
+			if (times.size() == WINDOW) {
+				times.removeFirst();
+			}
+			times.addLast(responseTime.toMillis());
+		}
+	}
+}
@@ -18,34 +18,39 @@
  */
 package is.codion.demos.llemmy.model;
 
+import is.codion.common.reactive.event.Event;
 import is.codion.common.reactive.observer.Observable;
+import is.codion.common.reactive.observer.Observer;
 import is.codion.common.reactive.state.ObservableState;
 import is.codion.common.reactive.state.State;
 import is.codion.common.reactive.value.Value;
 import is.codion.common.utilities.item.Item;
 import is.codion.common.utilities.scheduler.TaskScheduler;
+import is.codion.demos.llemmy.domain.Llemmy;
 import is.codion.demos.llemmy.domain.Llemmy.Chat;
 import is.codion.demos.llemmy.ui.EntityChatEditPanel;
 import is.codion.framework.db.EntityConnection;
 import is.codion.framework.db.EntityConnectionProvider;
+import is.codion.framework.domain.entity.Entities;
 import is.codion.framework.domain.entity.Entity;
+import is.codion.framework.domain.entity.condition.Condition;
 import is.codion.framework.domain.entity.exception.EntityValidationException;
-import is.codion.framework.model.EntityEditor.PersistTask;
 import is.codion.framework.model.EntityPersistence;
 import is.codion.swing.common.model.component.combobox.FilterComboBoxModel;
 import is.codion.swing.common.model.component.list.FilterListModel;
-import is.codion.swing.common.model.worker.ProgressWorker;
-import is.codion.swing.common.model.worker.ProgressWorker.ResultTaskHandler;
 import is.codion.swing.framework.model.SwingEntityEditModel;
 
+import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.message.ChatMessageType;
 import dev.langchain4j.data.message.Content;
-import dev.langchain4j.data.message.ImageContent;
-import dev.langchain4j.data.message.PdfFileContent;
 import dev.langchain4j.data.message.TextContent;
 import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.exception.RetriableException;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
 import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
 import dev.langchain4j.model.output.TokenUsage;
 
 import javax.swing.filechooser.FileFilter;
@@ -53,28 +58,55 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Base64;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
+import static dev.langchain4j.data.message.ChatMessageDeserializer.messageFromJson;
 import static dev.langchain4j.data.message.ChatMessageSerializer.messageToJson;
 import static is.codion.common.reactive.state.State.and;
 import static is.codion.common.utilities.item.Item.item;
+import static is.codion.framework.db.EntityConnection.Select.where;
+import static java.lang.String.format;
 import static java.lang.System.getProperty;
-import static java.nio.file.Files.readAllBytes;
 import static java.time.Duration.ZERO;
 import static java.time.Duration.between;
 import static java.util.Objects.requireNonNull;
 import static java.util.UUID.randomUUID;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.function.Predicate.not;
 import static java.util.stream.Collectors.joining;
+import static javax.swing.SwingUtilities.invokeLater;
 
 /**
  * Manages the state and the business logic for chatting with a language model.
@@ -107,27 +139,117 @@ public final class EntityChatEditModel extends SwingEntityEditModel {
 		}
 	}
 
-	private static final Base64.Encoder BASE64_ENCODER = Base64.getEncoder();
 	private static final String USER = getProperty("user.name");
 	private static final String SYSTEM = "System";
+	// The default token budget for the conversation memory
+	private static final int MEMORY_TOKENS = Integer.getInteger("llemmy.memory.tokens", 2_000);
+	// The maximum number of responses kept in the in-memory response cache
+	private static final int CACHE_SIZE = Integer.getInteger("llemmy.cache.size", 100);
+	// The directory for the on-disk response cache, if any
+	private static final String CACHE_DIRECTORY = getProperty("llemmy.cache.directory");
+	// Caches the responses, shared by all sessions
+	private static final ResponseCache RESPONSE_CACHE =
+					new ResponseCache(CACHE_SIZE, CACHE_DIRECTORY == null ? null : Paths.get(CACHE_DIRECTORY));
+	// The maximum time in ms a chat waits in the write-behind queue before being written
+	private static final int FLUSH_INTERVAL = Integer.getInteger("llemmy.writer.flushInterval", 200);
+	// The maximum number of chats written in a single transaction
+	private static final int FLUSH_SIZE = Integer.getInteger("llemmy.writer.flushSize", 50);
+	// The default deadline in seconds for a request to a chat model
+	private static final int DEADLINE = Integer.getInteger("llemmy.deadline", 300);
+	// Whether the deadlines adapt to the observed latency of each model by default
+	private static final boolean ADAPTIVE_DEADLINES = Boolean.getBoolean("llemmy.deadline.adaptive");
+	// Provides the deadlines, shared by all sessions
+	private static final Deadlines DEADLINES = new Deadlines(DEADLINE);
+	// The maximum number of calls to a chat model for a single response, including retries
+	private static final int RETRY_ATTEMPTS = Integer.getInteger("llemmy.retry.attempts", 3);
+	// The initial delay in ms before retrying, doubled with each retry
+	private static final int RETRY_DELAY = Integer.getInteger("llemmy.retry.delay", 500);
+	// The maximum delay in ms before retrying
+	private static final int RETRY_MAXIMUM_DELAY = Integer.getInteger("llemmy.retry.maximumDelay", 10_000);
+	// The number of consecutive failures opening the circuit breaker of a chat model
+	private static final int BREAKER_FAILURES = Integer.getInteger("llemmy.breaker.failures", 5);
+	// The number of seconds a circuit breaker stays open before allowing a trial call
+	private static final int BREAKER_OPEN = Integer.getInteger("llemmy.breaker.open", 30);
+	// The circuit breaker of each chat model, shared by all sessions
+	private static final Map<ChatModel, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+	// The requests per minute budget for each chat model, zero for unlimited
+	private static final int REQUESTS_PER_MINUTE = Integer.getInteger("llemmy.limit.requests", 0);
+	// The tokens per minute budget for each chat model, zero for unlimited
+	private static final int TOKENS_PER_MINUTE = Integer.getInteger("llemmy.limit.tokens", 0);
+	// The output tokens reserved for each request when the tokens per minute budget is limited,
+	// the unused ones are returned once the response has arrived
+	private static final int EXPECTED_OUTPUT_TOKENS = Integer.getInteger("llemmy.limit.outputTokens", 500);
+	// The maximum time in ms between checking whether a rate limit reservation has become available
+	private static final int RATE_LIMIT_RECHECK = 1_000;
+	// The rate limiter of each chat model, shared by all sessions
+	private static final Map<ChatModel, RateLimiter> RATE_LIMITERS = new ConcurrentHashMap<>();
+	// Records the latency and throughput metrics, shared by all sessions
+	private static final ChatMetrics METRICS = new ChatMetrics();
+	// The directory for the full-text index, alongside a file based database by default
+	private static final String SEARCH_DIRECTORY = getProperty("llemmy.search.directory",
+					getProperty("llemmy.database.directory") == null ? null :
+									Paths.get(getProperty("llemmy.database.directory"), "index").toString());
+	// Indexes the chat messages of all sessions, shared by all sessions
+	private static final ChatIndex CHAT_INDEX =
+					new ChatIndex(SEARCH_DIRECTORY == null ? null : Paths.get(SEARCH_DIRECTORY));
+	// Identifies the requests, correlating the flight recorder events
+	private static final AtomicLong REQUEST_ID = new AtomicLong();
+	// Prompts the models, each request on its own virtual thread, shared by all sessions
+	private static final ExecutorService REQUEST_EXECUTOR = newVirtualThreadPerTaskExecutor();
+	// Loads the attachments in parallel, shared by all sessions
+	private static final ExecutorService ATTACHMENT_EXECUTOR =
+					newFixedThreadPool(Math.min(4, Runtime.getRuntime().availableProcessors()), Thread.ofPlatform()
+									.name("llemmy-attachment-", 0)
+									.daemon(true)
+									.factory());
 
 	// Identifies the current chat session
 	private final UUID session = randomUUID();
 	// Indicates that the prompt text is empty
 	private final State promptEmpty = State.state(true);
-	// Indicates that the attachments list model is empty
+	// Indicates that no attachments have been loaded
 	private final State attachmentsEmpty = State.state(true);
-	// Indicates whether processing is ongoing
+	// Indicates that one or more attachments are being loaded
+	private final State attachmentsLoading = State.state();
+	// Indicates whether one or more requests are in progress
 	private final State processing = State.state();
 	// Indicates whether the last prompt resulted in an error
 	private final State error = State.state();
-	// Indicates whether prompt data is available and the model is not processing
-	private final ObservableState ready =
-					and(processing.not(), and(promptEmpty, attachmentsEmpty).not());
+	// Indicates whether responses should be streamed, when supported by the chat model
+	private final State streaming = State.state(true);
+	// Indicates whether prior turns of the session are sent along with the prompt
+	private final State memory = State.state(true);
+	// The token budget for the prior turns sent along with the prompt
+	private final Value<Integer> memoryTokens = Value.nonNull(MEMORY_TOKENS);
+	// Indicates whether the response cache should be bypassed
+	private final State bypassCache = State.state();
+	// Indicates whether the deadlines adapt to the observed latency of each model
+	private final State adaptiveDeadlines = State.state(ADAPTIVE_DEADLINES);
+	// Indicates whether a request fails over to the next model while the circuit breaker is open
+	private final State failover = State.state(true);
+	// Indicates whether prompts are sent to all the models included in the fan-out
+	private final State fanOut = State.state();
+	// Controls whether each model is included in the fan-out
+	private final Map<ChatModel, State> fanOutModels = new LinkedHashMap<>();
+	// Indicates whether prompts sent while requests are in progress are queued, instead of sent right away
+	private final State queuePrompts = State.state(true);
+	// Indicates whether prompt data is available, all attachments
+	// have been loaded, requests already in progress do not prevent further ones
+	private final ObservableState ready = and(and(promptEmpty, attachmentsEmpty).not(), attachmentsLoading.not());
+	// Indicates whether neither prompt text nor attachments have been entered, required for editing a queued prompt
+	private final ObservableState draftEmpty = and(and(promptEmpty, attachmentsEmpty), attachmentsLoading.not());
 
-	// Holds the time the last prompt was issued to the chat model
-	private final Value<LocalDateTime> started = Value.nullable();
-	// Holds the elapsed processing time of the current query
+	// Contains the requests in progress
+	private final FilterListModel<Request> requests =
+					FilterListModel.builder()
+									.items(Collections.<Request>emptyList())
+									.build();
+	// Contains the prompts waiting for the requests in progress to finish
+	private final FilterListModel<QueuedPrompt> queue =
+					FilterListModel.builder()
+									.items(Collections.<QueuedPrompt>emptyList())
+									.build();
+	// Holds the elapsed time of the longest running request in progress
 	private final Value<Duration> elapsed = Value.nonNull(ZERO);
 	// Updates the elapsed time every second during processing
 	private final TaskScheduler elapsedUpdater =
@@ -138,6 +260,30 @@ public final class EntityChatEditModel extends SwingEntityEditModel {
 
 	// Contains the available chat models
 	private final FilterComboBoxModel<Item<ChatModel>> chatModels;
+	// The streaming counterparts of the chat models, where available
+	private final Map<ChatModel, StreamingChatModel> streamingChatModels = new HashMap<>();
+	// Triggered each time a partial response is received from a streaming chat model
+	private final Event<String> partialResponse = Event.event();
+	// Triggered with the model name each time a streamed request is attempted, including retries and failovers
+	private final Event<String> streamStarted = Event.event();
+	// Triggered on the Event Dispatch Thread each time the loading progress of an attachment changes
+	private final Event<Attachment> attachmentChanged = Event.event();
+	// Triggered on the Event Dispatch Thread each time a chat is queued for writing
+	private final Event<Entity> queued = Event.event();
+	// Triggered on the Event Dispatch Thread each time a queued chat has been written
+	private final Event<WrittenChat> written = Event.event();
+	// Provides the prior turns of the session
+	private final ConversationMemory conversationMemory;
+	// Loads the attachments
+	private final AttachmentLoader attachmentLoader = new AttachmentLoader();
+	// Stores the attachment contents
+	private final AttachmentStore attachmentStore = new AttachmentStore();
+	// Writes the chats in batches
+	private final ChatWriter chatWriter;
+	// Searches the chat messages of all sessions
+	private final ChatSearchModel search;
+	// Fetches the attachments of a user message being restored, only accessed on the Event Dispatch Thread
+	private CompletableFuture<List<Entity>> restoring;
 	// Contains the file attachments
 	private final FilterListModel<Attachment> attachments =
 					FilterListModel.builder()
@@ -153,16 +299,32 @@ public final class EntityChatEditModel extends SwingEntityEditModel {
 	/**
 	 * Instantiates a new {@link EntityChatEditModel} instance
 	 * @param chatModels the chat models
+	 * @param streamingChatModels provides the streaming counterpart of a chat model, null if streaming is not supported
 	 * @param connectionProvider the connection provider
 	 * @throws IllegalArgumentException in case {@code chatModels} is empty
 	 */
 	public EntityChatEditModel(List<ChatModel> chatModels,
+														 Function<ChatModel, StreamingChatModel> streamingChatModels,
 														 EntityConnectionProvider connectionProvider) {
 		super(Chat.TYPE, connectionProvider);
-		editor().persistence().set(new ChatPersistence());
+		ChatPersistence persistence = new ChatPersistence(attachmentStore, CHAT_INDEX);
+		editor().persistence().set(persistence);
+		this.chatWriter = new ChatWriter(connectionProvider, persistence, METRICS, FLUSH_INTERVAL, FLUSH_SIZE);
+		this.search = new ChatSearchModel(CHAT_INDEX, connectionProvider);
+		// Index the chats written while the index was unavailable
+		CHAT_INDEX.catchUp(connectionProvider);
+		this.conversationMemory = new ConversationMemory(connectionProvider, session);
 		if (chatModels.isEmpty()) {
 			throw new IllegalArgumentException("No language model(s) provided");
 		}
+		chatModels.forEach(chatModel -> {
+			RATE_LIMITERS.computeIfAbsent(chatModel, model -> rateLimiter(model, connectionProvider));
+			fanOutModels.put(chatModel, State.state(true));
+			StreamingChatModel streamingChatModel = streamingChatModels.apply(chatModel);
+			if (streamingChatModel != null) {
+				this.streamingChatModels.put(chatModel, streamingChatModel);
+			}
+		});
 		// Wrap the language models in Item instances, for a caption to display in the combo box
 		this.chatModels = FilterComboBoxModel.builder()
 						.items(chatModels.stream()
@@ -172,6 +334,13 @@ public final class EntityChatEditModel extends SwingEntityEditModel {
 						.build();
 	}
 
+	/**
+	 * Writes the queued chats and stops the chat writer, called when the session ends.
+	 */
+	public void close() {
+		chatWriter.close();
+	}
+
 	public UUID session() {
 		return session;
 	}
@@ -184,14 +353,70 @@ public final class EntityChatEditModel extends SwingEntityEditModel {
 		return attachments;
 	}
 
+	/**
+	 * Adds an attachment, which is loaded in a background thread, in parallel with other attachments.
+	 * The size limits are specified by the 'llemmy.attachment.maximumSize'
+	 * and 'llemmy.attachment.maximumTotalSize' system properties, in bytes.
+	 * Must be called on the Event Dispatch Thread.
+	 * @param path the file to attach
+	 * @param mimeType the mime type
+	 * @throws IllegalArgumentException in case the file exceeds the size limits
+	 */
 	public void addAttachment(Path path, MimeType mimeType) {
-		attachments.items().add(createAttachment(requireNonNull(path), requireNonNull(mimeType)));
-		attachmentsEmpty.set(false);
+		requireNonNull(path);
+		requireNonNull(mimeType);
+		Attachment attachment = new Attachment(path, attachmentLoader.validate(path,
+						attachments.items().get().stream()
+										.filter(not(Attachment::failed))
+										.mapToLong(Attachment::size)
+										.sum()));
+		attachments.items().add(attachment);
+		attachment.future = ATTACHMENT_EXECUTOR.submit(() -> load(attachment, mimeType));
+		updateAttachmentStates();
 	}
 
+	/**
+	 * Removes the given attachment, cancelling the loading if it is ongoing.
+	 * Must be called on the Event Dispatch Thread.
+	 * @param attachment the attachment to remove
+	 */
 	public void removeAttachment(Attachment attachment) {
 		attachments.items().remove(requireNonNull(attachment));
-		attachmentsEmpty.set(attachments.items().size() == 0);
+		if (attachment.loading()) {
+			attachment.future.cancel(true);
+		}
+		updateAttachmentStates();
+	}
+
+	/**
+	 * Replaces the attachments with the ones referenced by the given user message,
+	 * which are loaded from the attachment store in a background thread.
+	 * Must be called on the Event Dispatch Thread.
+	 * @param chat the user message
+	 */
+	void restoreAttachments(Entity chat) {
+		List.copyOf(attachments.items().get()).forEach(this::removeAttachment);
+		if (restoring != null) {
+			restoring.cancel(true);
+			restoring = null;
+		}
+		String json = chat.get(Chat.JSON);
+		Set<String> hashes = json == null ? Set.of() : AttachmentStore.hashes((UserMessage) messageFromJson(json));
+		if (!hashes.isEmpty()) {
+			CompletableFuture<List<Entity>> stored = CompletableFuture.supplyAsync(() ->
+							AttachmentStore.attachments(hashes, connectionProvider().connection()), ATTACHMENT_EXECUTOR);
+			restoring = stored;
+			stored.whenComplete((result, exception) -> invokeLater(() -> restored(stored, hashes, result, exception)));
+			updateAttachmentStates();
+		}
+	}
+
+	/**
+	 * Triggered on the Event Dispatch Thread.
+	 * @return an observer notified each time the loading progress of an attachment changes
+	 */
+	public Observer<Attachment> attachmentChanged() {
+		return attachmentChanged.observer();
 	}
 
 	/**
@@ -204,15 +429,41 @@ public final class EntityChatEditModel extends SwingEntityEditModel {
 
 	/**
 	 * Updated on the Event Dispatch Thread
-	 * @return the processing indicator
+	 * @return an indicator, true while neither prompt text nor attachments have been entered
+	 * @see #edit(QueuedPrompt)
+	 */
+	public ObservableState draftEmpty() {
+		return draftEmpty;
+	}
+
+	/**
+	 * Updated on the Event Dispatch Thread
+	 * @return the processing indicator, true while one or more requests are in progress
 	 */
 	public ObservableState processing() {
 		return processing.observable();
 	}
 
 	/**
-	 * Updated in a worker thread.
-	 * @return the elapsed time
+	 * Modified on the Event Dispatch Thread
+	 * @return the requests in progress
+	 */
+	public FilterListModel<Request> requests() {
+		return requests;
+	}
+
+	/**
+	 * Modified on the Event Dispatch Thread
+	 * @return the prompts waiting to be sent, in order
+	 * @see #queuePrompts()
+	 */
+	public FilterListModel<QueuedPrompt> queue() {
+		return queue;
+	}
+
+	/**
+	 * Updated on the Event Dispatch Thread, each second while processing.
+	 * @return the elapsed time of the longest running request in progress
 	 */
 	public Observable<Duration> elapsed() {
 		return elapsed.observable();
@@ -234,37 +485,272 @@ public final class EntityChatEditModel extends SwingEntityEditModel {
 	}
 
 	/**
-	 * Sends the current prompt along with all attachments.
+	 * Responses are only streamed in case the selected chat model
+	 * has a streaming counterpart, otherwise this state is ignored.
+	 * @return the {@link State} controlling whether responses are streamed
+	 */
+	public State streaming() {
+		return streaming;
+	}
+
+	/**
+	 * @return the {@link State} controlling whether prior turns of the session are sent along with the prompt
+	 */
+	public State memory() {
+		return memory;
+	}
+
+	/**
+	 * Prior turns are included, newest first, until the estimated token count exceeds this budget.
+	 * The default value is specified by the 'llemmy.memory.tokens' system property.
+	 * @return the {@link Value} controlling the token budget for the conversation memory
+	 */
+	public Value<Integer> memoryTokens() {
+		return memoryTokens;
+	}
+
+	/**
+	 * When bypassed, the response is always fetched from the chat model, replacing any cached one.
+	 * The cache size is specified by the 'llemmy.cache.size' system property and the
+	 * optional on-disk cache directory by the 'llemmy.cache.directory' system property.
+	 * @return the {@link State} controlling whether the response cache is bypassed
+	 */
+	public State bypassCache() {
+		return bypassCache;
+	}
+
+	/**
+	 * The fixed deadline for a request to a chat model is specified by the 'llemmy.deadline'
+	 * system property, in seconds, and can be overridden for each model provider, i.e. 'llemmy.deadline.OLLAMA'.
+	 * The adaptive deadline is based on the recent response times of each model, bounded by the fixed one.
+	 * The default value is specified by the 'llemmy.deadline.adaptive' system property.
+	 * @return the {@link State} controlling whether the deadlines adapt to the observed latency of each model
+	 */
+	public State adaptiveDeadlines() {
+		return adaptiveDeadlines;
+	}
+
+	/**
+	 * Transient failures are retried with exponential backoff and jitter, the number of attempts is
+	 * specified by the 'llemmy.retry.attempts' system property and the initial and maximum delays, in ms,
+	 * by 'llemmy.retry.delay' and 'llemmy.retry.maximumDelay'. The circuit breaker of a model opens after
+	 * the number of consecutive transient failures or timeouts specified by 'llemmy.breaker.failures' and stays open for the
+	 * number of seconds specified by 'llemmy.breaker.open'. Requests to several models never fail over.
+	 * @return the {@link State} controlling whether a request fails over to the next
+	 * available chat model, while the circuit breaker of the requested one is open
+	 */
+	public State failover() {
+		return failover;
+	}
+
+	/**
+	 * Responses are not streamed when several models are prompted.
+	 * @return the {@link State} controlling whether prompts are sent to all
+	 * the models included in the fan-out, instead of only the selected one
+	 * @see #fanOut(ChatModel)
+	 */
+	public State fanOut() {
+		return fanOut;
+	}
+
+	/**
+	 * @param chatModel the chat model
+	 * @return the {@link State} controlling whether the given model is included in the fan-out
+	 * @throws IllegalArgumentException in case the chat model is not available
+	 */
+	public State fanOut(ChatModel chatModel) {
+		State included = fanOutModels.get(requireNonNull(chatModel));
+		if (included == null) {
+			throw new IllegalArgumentException("Chat model not available: " + chatModel);
+		}
+
+		return included;
+	}
+
+	/**
+	 * When enabled, prompts sent while one or more requests are in progress are queued, along
+	 * with their attachments, and sent in order, each one as soon as the previous responses arrive.
+	 * Otherwise, prompts are sent right away, regardless of the requests in progress.
+	 * @return the {@link State} controlling whether prompts are queued while processing
+	 * @see #queue()
+	 */
+	public State queuePrompts() {
+		return queuePrompts;
+	}
+
+	/**
+	 * @return the latency and throughput metrics, shared by all sessions
+	 */
+	public ChatMetrics metrics() {
+		return METRICS;
+	}
+
+	/**
+	 * @return the full-text search over the chat messages of all sessions
+	 */
+	public ChatSearchModel search() {
+		return search;
+	}
+
+	/**
+	 * Triggered in a worker thread.
+	 * @return an observer notified each time a partial response is received while streaming
+	 */
+	public Observer<String> partialResponse() {
+		return partialResponse.observer();
+	}
+
+	/**
+	 * Triggered in a worker thread, with the name of the chat model, each time a request is attempted
+	 * while streaming, including retries and failovers, before any partial response is received.
+	 * Any partial response received during a previous attempt should be discarded.
+	 * @return an observer notified each time a request is attempted while streaming
+	 */
+	public Observer<String> streamStarted() {
+		return streamStarted.observer();
+	}
+
+	/**
+	 * Sends the current prompt along with all attachments, or queues it
+	 * in case prompts are being queued and requests are in progress.
+	 * @see #queuePrompts()
 	 */
 	public void send() throws EntityValidationException {
-		// Here we start by inserting the user message in a
-		// background thread, after which we prompt the model
-		UserMessage userMessage = userMessage();
-		ProgressWorker.builder()
-						.task(editor().tasks().insert(entity(userMessage)).prepare()::perform)
-						.onResult(result -> prompt(new ChatResponseTask(userMessage, result)))
-						.execute();
+		List<Attachment> loaded = attachments.items().get().stream()
+						.filter(Attachment::loaded)
+						.toList();
+		// Queued prompts are sent before any following ones, in order
+		if (queuePrompts.is() && (processing.is() || !queue.items().get().isEmpty())) {
+			queue.items().add(new QueuedPrompt(prompt.get(), loaded));
+		}
+		else {
+			send(prompt.get(), loaded, System.nanoTime());
+		}
+		prompt.clear();
+	}
+
+	/**
+	 * Cancels all the requests in progress.
+	 * Must be called on the Event Dispatch Thread.
+	 * @see #cancel(Request)
+	 */
+	public void cancel() {
+		requests.items().get().forEach(this::cancel);
+	}
+
+	/**
+	 * Cancels the given request, aborting the underlying model calls, the request
+	 * is then recorded as a system message, containing the time elapsed.
+	 * Must be called on the Event Dispatch Thread.
+	 * @param request the request to cancel
+	 */
+	public void cancel(Request request) {
+		requireNonNull(request).cancel();
+	}
+
+	/**
+	 * Removes the given prompt from the queue, replacing the
+	 * current prompt and attachments with its own, for editing.
+	 * Must be called on the Event Dispatch Thread.
+	 * @param queuedPrompt the queued prompt to edit
+	 * @throws IllegalStateException in case prompt text or attachments have been entered, which would be lost
+	 * @see #draftEmpty()
+	 */
+	public void edit(QueuedPrompt queuedPrompt) {
+		requireNonNull(queuedPrompt);
+		if (!draftEmpty.is()) {
+			throw new IllegalStateException("Send or clear the current prompt before editing a queued one");
+		}
+		queue.items().remove(queuedPrompt);
+		List.copyOf(attachments.items().get()).forEach(this::removeAttachment);
+		queuedPrompt.attachments.forEach(attachments.items()::add);
+		updateAttachmentStates();
+		prompt.set(queuedPrompt.prompt);
+	}
+
+	private void send(String text, List<Attachment> attachments, long sent) throws EntityValidationException {
+		long requestId = REQUEST_ID.incrementAndGet();
+		ChatEvents.Send event = new ChatEvents.Send();
+		event.begin();
+		// Here we start by queueing the user message for writing and prompt
+		// the model right away, the response is written once the user
+		// message has been, see ChatResponseTask.written()
+		UserMessage userMessage = userMessage(text, attachments, false);
+		// The stored message references the attachment contents, instead of including them
+		UserMessage storedMessage = userMessage(text, attachments, true);
+		Entity entity = entity(userMessage, storedMessage);
+		// The prior turns must be written before the conversation memory is read
+		CompletableFuture<?> priorChats = chatWriter.flush();
+		CompletableFuture<Entity> inserted = write(entity, requestId);
+		event.requestId = requestId;
+		event.attachments = attachments.size();
+		event.commit();
+		prompt(new ChatResponseTask(requestId, userMessage, storedMessage, entity.get(Chat.TIMESTAMP), sent, priorChats, inserted));
 	}
 
-	private UserMessage userMessage() {
+	/**
+	 * Triggered on the Event Dispatch Thread, the chat is
+	 * identified by a negative id until it has been written.
+	 * @return an observer notified each time a chat is queued for writing
+	 */
+	Observer<Entity> queued() {
+		return queued.observer();
+	}
+
+	/**
+	 * Triggered on the Event Dispatch Thread.
+	 * @return an observer notified each time a queued chat has been written, or failed to be
+	 */
+	Observer<WrittenChat> written() {
+		return written.observer();
+	}
+
+	/**
+	 * Validates and queues the given chat for writing, notifying the {@link #queued()} observers.
+	 * Must be called on the Event Dispatch Thread.
+	 * @param chat the chat
+	 * @param requestId the id of the request the chat belongs to
+	 * @return a future completed with the inserted chat when written
+	 */
+	private CompletableFuture<Entity> write(Entity chat, long requestId) throws EntityValidationException {
+		entityDefinition().validator().validate(chat);
+		chat.set(Chat.ID, ChatWriter.temporaryId());
+		queued.accept(chat);
+
+		return chatWriter.write(chat, requestId)
+						.whenComplete((inserted, exception) -> {
+							if (inserted != null) {
+								// The referenced contents have been committed
+								attachmentStore.written(inserted);
+							}
+							invokeLater(() -> written.accept(new WrittenChat(chat, inserted, requestId)));
+						});
+	}
+
+	private UserMessage userMessage(String text, List<Attachment> attachments, boolean references) {
 		UserMessage.Builder builder = UserMessage.builder().name(USER);
-		prompt.optional()
-						.filter(not(String::isBlank))
-						.ifPresent(text -> builder.addContent(TextContent.from(text)));
-		attachments.items().get().forEach(attachment ->
-						builder.addContent(attachment.content()));
+		if (!text.isBlank()) {
+			builder.addContent(TextContent.from(text));
+		}
+		attachments.forEach(attachment -> builder.addContent(references ? reference(attachment) : attachment.content()));
 
 		return builder.build();
 	}
 
-	private Entity entity(UserMessage message) {
+	private Content reference(Attachment attachment) {
+		return attachment.hash == null ? attachment.content() :
+						attachmentStore.reference(attachment.hash, attachment.path.getFileName().toString(),
+										attachment.size, attachment.content());
+	}
+
+	private Entity entity(UserMessage message, UserMessage storedMessage) {
 		return entities().entity(Chat.TYPE)
 						.with(Chat.MESSAGE_TYPE, ChatMessageType.USER)
 						.with(Chat.SESSION, session)
 						.with(Chat.NAME, USER)
 						.with(Chat.TIMESTAMP, LocalDateTime.now())
 						.with(Chat.MESSAGE, messageText(message))
-						.with(Chat.JSON, messageToJson(message))
+						.with(Chat.JSON, messageToJson(storedMessage))
 						.build();
 	}
 
@@ -277,129 +763,797 @@ public final class EntityChatEditModel extends SwingEntityEditModel {
 	}
 
 	private void updateElapsed() {
-		elapsed.set(started.optional()
-						.map(time -> between(time, LocalDateTime.now()))
-						.orElse(ZERO));
+		// The requests are only accessed on the Event Dispatch Thread
+		invokeLater(() -> elapsed.set(requests.items().get().stream()
+						.map(Request::elapsed)
+						.max(Duration::compareTo)
+						.orElse(ZERO)));
 	}
 
 	private void prompt(ChatResponseTask responseTask) {
 		// The language model is prompted and the result
-		// inserted into the database in a background thread
-		ProgressWorker.builder()
-						.task(responseTask)
-						.execute();
+		// written to the database in a background thread
+		started(responseTask.request);
+		responseTask.dispatch.begin();
+		REQUEST_EXECUTOR.execute(responseTask);
 	}
 
-	private static Attachment createAttachment(Path path, MimeType mimeType) {
-		return switch (mimeType) {
-			case PNG, JPEG -> new Attachment(path,
-							ImageContent.from(toBase64Bytes(path), mimeType.type()));
-			case PLAIN_TEXT -> new Attachment(path,
-							TextContent.from(toString(path)));
-			case PDF -> new Attachment(path,
-							PdfFileContent.from(toBase64Bytes(path), mimeType.type()));
-		};
+	private void started(Request request) {
+		requests.items().add(request);
+		processing.set(true);
+		elapsedUpdater.start();
+	}
+
+	private void finished(Request request, boolean isError) {
+		request.event.error = isError;
+		request.event.commit();
+		error.set(isError);
+		requests.items().remove(request);
+		if (requests.items().get().isEmpty()) {
+			elapsedUpdater.stop();
+			processing.set(false);
+			elapsed.clear();
+			if (!queue.items().get().isEmpty()) {
+				sendQueued();
+			}
+		}
 	}
 
-	private static String toBase64Bytes(Path attachment) {
+	private void sendQueued() {
+		QueuedPrompt queuedPrompt = queue.items().get().getFirst();
+		queue.items().remove(queuedPrompt);
 		try {
-			return BASE64_ENCODER.encodeToString(readAllBytes(attachment));
+			send(queuedPrompt.prompt, queuedPrompt.attachments, queuedPrompt.queued);
 		}
-		catch (IOException e) {
+		catch (EntityValidationException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	private static String toString(Path path) {
+	private void load(Attachment attachment, MimeType mimeType) {
+		ChatEvents.AttachmentLoad event = new ChatEvents.AttachmentLoad();
+		event.begin();
 		try {
-			return Files.readString(path);
+			MessageDigest digest = ResponseCache.sha256();
+			Content content = attachmentLoader.load(attachment.path, mimeType, attachment.size, digest, progress -> {
+				// Only notify when the percentage changes
+				if (progress != attachment.progress) {
+					attachment.progress = progress;
+					invokeLater(() -> attachmentChanged.accept(attachment));
+				}
+			});
+			String hash = mimeType == MimeType.PLAIN_TEXT ? null : HexFormat.of().formatHex(digest.digest());
+			if (event.shouldCommit()) {
+				event.path = attachment.path.toString();
+				event.size = attachment.size;
+				event.mimeType = mimeType.type();
+				event.commit();
+			}
+			invokeLater(() -> loaded(attachment, hash, content, null));
 		}
-		catch (IOException e) {
-			throw new RuntimeException(e);
+		catch (Exception e) {
+			invokeLater(() -> loaded(attachment, null, null, e));
+		}
+	}
+
+	private void restore(Attachment attachment) {
+		try {
+			Content content = AttachmentStore.load(attachment.hash, connectionProvider().connection());
+			invokeLater(() -> loaded(attachment, attachment.hash, content, null));
+		}
+		catch (Exception e) {
+			invokeLater(() -> loaded(attachment, attachment.hash, null, e));
+		}
+	}
+
+	private void restored(CompletableFuture<List<Entity>> stored, Set<String> hashes, List<Entity> result, Throwable exception) {
+		if (restoring != stored) {
+			// Replaced or cancelled in the meantime
+			return;
+		}
+		restoring = null;
+		if (exception != null) {
+			// Displayed as failed attachments
+			Exception cause = exception instanceof CompletionException && exception.getCause() instanceof Exception e ? e :
+							new RuntimeException(exception);
+			hashes.forEach(hash -> {
+				Attachment attachment = new Attachment(Path.of(hash), 0);
+				attachment.exception = cause;
+				attachments.items().add(attachment);
+			});
+		}
+		else {
+			for (Entity entity : result) {
+				Attachment attachment = new Attachment(Path.of(entity.get(Llemmy.Attachment.NAME)), entity.get(Llemmy.Attachment.SIZE));
+				attachment.hash = entity.get(Llemmy.Attachment.HASH);
+				attachments.items().add(attachment);
+				attachment.future = ATTACHMENT_EXECUTOR.submit(() -> restore(attachment));
+			}
 		}
+		updateAttachmentStates();
+	}
+
+	private void loaded(Attachment attachment, String hash, Content content, Exception exception) {
+		attachment.hash = hash;
+		attachment.content = content;
+		attachment.exception = exception;
+		updateAttachmentStates();
+		attachmentChanged.accept(attachment);
 	}
 
-	public record Attachment(Path path, Content content) {
+	private void updateAttachmentStates() {
+		List<Attachment> items = attachments.items().get();
+		attachmentsLoading.set(restoring != null || items.stream().anyMatch(Attachment::loading));
+		attachmentsEmpty.set(items.stream().noneMatch(Attachment::loaded));
+	}
+
+	/**
+	 * An attachment, which is either loading, loaded or failed.
+	 */
+	public static final class Attachment {
+
+		private final Path path;
+		private final long size;
+
+		// Only modified on the Event Dispatch Thread, except for the progress
+		private volatile int progress = 0;
+		private String hash;
+		private Content content;
+		private Exception exception;
+		private Future<?> future;
+
+		private Attachment(Path path, long size) {
+			this.path = path;
+			this.size = size;
+		}
+
+		public Path path() {
+			return path;
+		}
+
+		/**
+		 * @return the file size in bytes
+		 */
+		public long size() {
+			return size;
+		}
+
+		/**
+		 * @return the content, null if not loaded
+		 */
+		public Content content() {
+			return content;
+		}
+
+		public boolean loading() {
+			return content == null && exception == null;
+		}
+
+		public boolean loaded() {
+			return content != null;
+		}
+
+		public boolean failed() {
+			return exception != null;
+		}
 
 		@Override
 		public String toString() {
+			if (loading()) {
+				return path + " (" + progress + "%)";
+			}
+			if (failed()) {
+				return path + " (" + exception.getMessage() + ")";
+			}
+
 			return path.toString();
 		}
 	}
 
-	private final class ChatResponseTask implements ResultTaskHandler<Entity> {
+	/**
+	 * A request in progress.
+	 */
+	public static final class Request {
+
+		private static final int MAXIMUM_PROMPT_LENGTH = 40;
+
+		private final long id;
+		private final String prompt;
+		private final String models;
+		private final LocalDateTime started = LocalDateTime.now();
+		// Committed when the request has finished
+		private final ChatEvents.Request event = new ChatEvents.Request();
+		// The model calls in progress
+		private final List<Future<?>> calls = new CopyOnWriteArrayList<>();
+
+		private volatile boolean cancelled = false;
+		// Set while waiting for the rate limits
+		private volatile LocalDateTime waitingUntil;
+
+		private Request(long id, String prompt, List<ChatModel> chatModels) {
+			this.id = id;
+			String line = prompt.lines().findFirst().orElse("").strip();
+			this.prompt = line.length() > MAXIMUM_PROMPT_LENGTH ? line.substring(0, MAXIMUM_PROMPT_LENGTH) + "..." : line;
+			this.models = chatModels.stream()
+							.map(chatModel -> chatModel.provider().name())
+							.collect(joining(", "));
+			this.event.requestId = id;
+			this.event.models = models;
+			this.event.begin();
+		}
+
+		/**
+		 * @return the time elapsed since the request was started
+		 */
+		public Duration elapsed() {
+			return between(started, LocalDateTime.now());
+		}
+
+		/**
+		 * @return the remaining time this request waits for the rate limits, zero if not waiting
+		 */
+		public Duration waiting() {
+			LocalDateTime until = waitingUntil;
+			if (until == null) {
+				return ZERO;
+			}
+			Duration waiting = between(LocalDateTime.now(), until);
+
+			return waiting.isNegative() ? ZERO : waiting;
+		}
+
+		public boolean cancelled() {
+			return cancelled;
+		}
+
+		@Override
+		public String toString() {
+			Duration elapsed = elapsed();
+			Duration waiting = waiting();
+
+			return format("%02d:%02d %s (%s)%s%s", elapsed.toMinutes(), elapsed.toSecondsPart(), prompt, models,
+							waiting.isZero() ? "" : " waiting " + waiting.toSeconds() + " s", cancelled ? " cancelled" : "");
+		}
+
+		private void cancel() {
+			cancelled = true;
+			calls.forEach(call -> call.cancel(true));
+		}
+
+		/**
+		 * Registers the given call, cancelling it right away in case this request has been cancelled
+		 * @param call the model call
+		 */
+		private void add(Future<?> call) {
+			calls.add(call);
+			if (cancelled) {
+				call.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * A prompt waiting for the requests in progress to finish, along with its attachments.
+	 */
+	public static final class QueuedPrompt {
+
+		private final String prompt;
+		private final List<Attachment> attachments;
+		private final long queued = System.nanoTime();
+
+		private QueuedPrompt(String prompt, List<Attachment> attachments) {
+			this.prompt = prompt;
+			this.attachments = attachments;
+		}
+
+		public String prompt() {
+			return prompt;
+		}
+
+		/**
+		 * @return the loaded attachments
+		 */
+		public List<Attachment> attachments() {
+			return attachments;
+		}
+
+		@Override
+		public String toString() {
+			String line = prompt.lines().findFirst().orElse("").strip();
+			String text = line.length() > Request.MAXIMUM_PROMPT_LENGTH ?
+							line.substring(0, Request.MAXIMUM_PROMPT_LENGTH) + "..." : line;
+
+			return attachments.isEmpty() ? text : text + " (" + attachments.size() + " attachments)";
+		}
+	}
+
+	private final class ChatResponseTask implements Runnable {
 
 		private final UserMessage userMessage;
+		// References the attachment contents by their hash, identifying the prompt in the response cache
+		private final UserMessage storedMessage;
+		private final LocalDateTime timestamp;
+		// The System.nanoTime() when the prompt was sent, or queued
+		private final long sent;
+		// Set once the first model call has been made
+		private final AtomicBoolean dispatched = new AtomicBoolean();
+		private final CompletableFuture<?> priorChats;
+		private final CompletableFuture<Entity> userMessageInserted;
+		private final List<ChatModel> promptedModels = promptedModels();
+		// All the models in order, in case of failover, which only applies when a single model is prompted
+		private final List<ChatModel> fallbackModels = failover.is() && promptedModels.size() == 1 ?
+						chatModels.items().get().stream()
+										.map(Item::get)
+										.toList() : List.of();
+		private final boolean useCache = !bypassCache.is();
+		// Streamed responses from several models, or several requests, would be interleaved
+		private final boolean stream = streaming.is() && promptedModels.size() == 1 && requests.items().get().isEmpty();
+		private final Request request;
+		// Begins when the task is handed off to the request thread
+		private final ChatEvents.Dispatch dispatch = new ChatEvents.Dispatch();
+		// Completed once the responses have been queued for writing
+		private final List<CompletableFuture<?>> writes = new CopyOnWriteArrayList<>();
 
-		private ChatResponseTask(UserMessage userMessage, PersistTask.Result insertResult) {
+		private ChatResponseTask(long requestId, UserMessage userMessage, UserMessage storedMessage, LocalDateTime timestamp,
+														 long sent, CompletableFuture<?> priorChats, CompletableFuture<Entity> userMessageInserted) {
 			this.userMessage = userMessage;
-			// Finish the user message insert by handling
-			// the result, which must happen on the EDT
-			insertResult.handle();
-			prompt.clear();
+			this.storedMessage = storedMessage;
+			this.timestamp = timestamp;
+			this.sent = sent;
+			this.priorChats = priorChats;
+			this.userMessageInserted = userMessageInserted;
+			this.request = new Request(requestId, messageText(userMessage), promptedModels);
+			// The prompt is lost along with the user message, record it in a system message
+			userMessageInserted.exceptionally(exception -> {
+				invokeLater(() -> userMessageFailed(exception));
+				return null;
+			});
 		}
 
 		@Override
-		public Entity execute() {
-			ChatModel chatModel = chatModel();
+		public void run() {
+			dispatch.requestId = request.id;
+			dispatch.commit();
+			List<Entity> responses = execute();
+			// Finish once the responses have been queued for writing, so that
+			// they are included in the conversation memory of any queued prompt
+			CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]))
+							.whenComplete((result, exception) -> invokeLater(() -> finished(request, responses.stream()
+											.anyMatch(response -> SYSTEM.equals(response.get(Chat.NAME))))));
+		}
+
+		private List<Entity> execute() {
+			List<ChatMessage> messages;
+			try {
+				messages = messages();
+			}
+			catch (Exception e) {
+				return List.of(written(entity(e)));
+			}
+			if (promptedModels.size() == 1) {
+				return List.of(written(response(promptedModels.getFirst(), messages)));
+			}
+			// Fan out, prompting all the models concurrently, each response
+			// is written as soon as it arrives, the slowest one determining
+			// the total time, as opposed to the sum of all of them.
+			// Closing the executor waits for all the responses
+			List<Future<Entity>> responses;
+			try (ExecutorService executor = newVirtualThreadPerTaskExecutor()) {
+				responses = promptedModels.stream()
+								.map(chatModel -> executor.submit(() -> written(response(chatModel, messages))))
+								.toList();
+			}
+
+			return responses.stream()
+							.map(Future::resultNow)
+							.toList();
+		}
+
+		private Entity response(ChatModel chatModel, List<ChatMessage> messages) {
 			LocalDateTime start = LocalDateTime.now();
+			Invocation invocation = new Invocation();
+			Entity response;
 			try {
-				return entity(chatModel.provider().name(),
-								chatModel.chat(userMessage),
-								Duration.between(start, LocalDateTime.now()));
+				Optional<ChatResponse> cached = useCache ? RESPONSE_CACHE.get(cacheKey(chatModel, messages)) : Optional.empty();
+				if (cached.isPresent()) {
+					return entity(chatModel.provider().name(), cached.get(),
+									Duration.between(start, LocalDateTime.now()), true);
+				}
+				ChatResponse chatResponse = invocation.invoke(chatModel, messages);
+				// The response may originate from another model, in case of a failover
+				RESPONSE_CACHE.put(cacheKey(invocation.chatModel, messages), chatResponse);
+				ChatEvents.ResponseEntity event = new ChatEvents.ResponseEntity();
+				event.begin();
+				response = entity(invocation.chatModel.provider().name(), chatResponse,
+								Duration.between(start, LocalDateTime.now()), false);
+				if (event.shouldCommit()) {
+					event.requestId = request.id;
+					event.model = invocation.chatModel.provider().name();
+					event.commit();
+				}
+			}
+			catch (CancellationException e) {
+				response = entity(chatModel.provider().name() + " request cancelled", Duration.between(start, LocalDateTime.now()));
+			}
+			catch (TimeoutException e) {
+				response = entity(e.getMessage(), Duration.between(start, LocalDateTime.now()));
 			}
 			catch (Exception e) {
-				return entity(e);
+				response = entity(e);
 			}
+			response.set(Chat.ATTEMPTS, invocation.attempts);
+
+			return response;
 		}
 
-		// Must be called on the Event Dispatch Thread
-		// since this affects one or more UI components
-		@Override
-		public void onResult(Entity entity) {
-			stopped(SYSTEM.equals(entity.get(Chat.NAME)));
-			// insert the chat response
+		/**
+		 * Calls the given model in a separate thread, which is interrupted
+		 * in case the request is cancelled or the deadline is exceeded.
+		 * @throws CancellationException in case the request was cancelled
+		 * @throws TimeoutException in case the deadline was exceeded
+		 */
+		private ChatResponse call(ChatModel chatModel, List<ChatMessage> messages) throws Exception {
+			// Wait for the rate limits, the output tokens being capped so that
+			// a single request can not exceed the tokens per minute budget,
+			// reserving only the expected output tokens, so that concurrent
+			// requests are not kept waiting for the whole budget
+			RateLimiter rateLimiter = RATE_LIMITERS.get(chatModel);
+			int inputTokens = RateLimiter.estimate(messages);
+			OptionalInt maxOutputTokens = rateLimiter.maxOutputTokens(inputTokens);
+			int reserved = inputTokens + Math.min(EXPECTED_OUTPUT_TOKENS, maxOutputTokens.orElse(0));
+			RateLimiter.Reservation reservation = rateLimiter.reserve(reserved);
+			try {
+				waitFor(rateLimiter, reservation, chatModel.provider().name());
+			}
+			catch (Exception e) {
+				// Never submitted, return the request along with its tokens
+				rateLimiter.release(reserved);
+				throw e;
+			}
+			if (dispatched.compareAndSet(false, true)) {
+				METRICS.queueWait(System.nanoTime() - sent);
+			}
+			ChatRequest.Builder chatRequest = ChatRequest.builder().messages(messages);
+			maxOutputTokens.ifPresent(chatRequest::maxOutputTokens);
+			Duration deadline = DEADLINES.deadline(chatModel, adaptiveDeadlines.is());
+			ChatEvents.ModelCall event = new ChatEvents.ModelCall();
+			event.begin();
+			Future<ChatResponse> call = REQUEST_EXECUTOR.submit(() -> chat(chatModel, chatRequest.build()));
+			request.add(call);
+			long started = System.nanoTime();
+			int used = 0;
 			try {
-				ProgressWorker.builder()
-								.task(editor().tasks().insert(entity).prepare()::perform)
-								.onResult(PersistTask.Result::handle)
-								.execute();
+				ChatResponse response = call.get(deadline.toMillis(), MILLISECONDS);
+				long latency = System.nanoTime() - started;
+				DEADLINES.record(chatModel, Duration.ofNanos(latency));
+				used = usedTokens(response, reserved);
+				METRICS.response(chatModel.provider().name(), latency, outputTokens(response));
+				event.outputTokens = outputTokens(response);
+				event.outcome = "success";
+
+				return response;
+			}
+			catch (TimeoutException e) {
+				call.cancel(true);
+				METRICS.error(chatModel.provider().name());
+				event.outcome = "timeout";
+				throw new TimeoutException(format("%s request timed out, deadline %d s",
+								chatModel.provider().name(), deadline.toSeconds()));
+			}
+			catch (CancellationException e) {
+				event.outcome = "cancelled";
+				throw e;
+			}
+			catch (ExecutionException e) {
+				METRICS.error(chatModel.provider().name());
+				event.outcome = "error";
+				if (e.getCause() instanceof Exception cause) {
+					throw cause;
+				}
+				throw e;
+			}
+			finally {
+				rateLimiter.reconcile(reserved, used);
+				if (event.shouldCommit()) {
+					event.requestId = request.id;
+					event.model = chatModel.provider().name();
+					event.streamed = stream && streamingChatModels.containsKey(chatModel);
+					event.inputTokens = inputTokens;
+					event.commit();
+				}
+			}
+		}
+
+		/**
+		 * Waits for the rate limits, displaying the wait in the request, aborted in case the request is cancelled.
+		 * The remaining time is checked again when tokens are returned to the rate limiter, and at least once a second.
+		 * @param rateLimiter the rate limiter
+		 * @param reservation the reservation to wait for
+		 * @param model the model name
+		 * @throws CancellationException in case the request was cancelled
+		 */
+		private void waitFor(RateLimiter rateLimiter, RateLimiter.Reservation reservation, String model)
+						throws InterruptedException, ExecutionException {
+			// Before checking the remaining time, in order not to miss any returned tokens
+			CompletableFuture<?> returned = rateLimiter.returned();
+			Duration wait = reservation.remaining();
+			if (wait.isPositive()) {
+				ChatEvents.RateLimitWait event = new ChatEvents.RateLimitWait();
+				event.begin();
+				try {
+					while (wait.isPositive()) {
+						request.waitingUntil = LocalDateTime.now().plus(wait);
+						delay(Math.min(wait.toMillis(), RATE_LIMIT_RECHECK), returned);
+						returned = rateLimiter.returned();
+						wait = reservation.remaining();
+					}
+				}
+				finally {
+					request.waitingUntil = null;
+					event.requestId = request.id;
+					event.model = model;
+					event.commit();
+				}
+			}
+		}
+
+		/**
+		 * Waits for the backoff delay before the given retry, with full jitter, aborted in case the request is cancelled.
+		 * @param retry the retry number, starting with 1
+		 * @throws CancellationException in case the request was cancelled
+		 */
+		private void backoff(int retry) throws InterruptedException, ExecutionException {
+			long delay = Math.min(RETRY_MAXIMUM_DELAY, RETRY_DELAY * (1L << Math.min(retry - 1, 30)));
+			delay(ThreadLocalRandom.current().nextLong(delay + 1));
+		}
+
+		private void delay(long millis) throws InterruptedException, ExecutionException {
+			delay(millis, new CompletableFuture<>());
+		}
+
+		/**
+		 * @param millis the delay
+		 * @param wakeUp ends the delay early when completed
+		 */
+		private void delay(long millis, CompletableFuture<?> wakeUp) throws InterruptedException, ExecutionException {
+			CompletableFuture<?> delay = CompletableFuture.anyOf(CompletableFuture.runAsync(() -> {},
+							CompletableFuture.delayedExecutor(millis, MILLISECONDS)), wakeUp);
+			request.add(delay);
+			delay.get();
+		}
+
+		/**
+		 * Invokes a chat model, retrying transient failures with exponential backoff, failing over
+		 * to the next available model, in case failover is enabled, while the circuit breaker is open.
+		 */
+		private final class Invocation {
+
+			// The model last invoked
+			private ChatModel chatModel;
+			// The number of model calls made
+			private int attempts = 0;
+
+			private ChatResponse invoke(ChatModel requested, List<ChatMessage> messages) throws Exception {
+				Exception failure = null;
+				for (ChatModel candidate : candidates(requested)) {
+					CircuitBreaker breaker = breaker(candidate);
+					if (breaker.allow()) {
+						chatModel = candidate;
+						try {
+							return retry(candidate, breaker, messages);
+						}
+						catch (Exception e) {
+							// Only fail over while the breaker is open
+							if (e instanceof CancellationException || !breaker.open()) {
+								throw e;
+							}
+							failure = e;
+						}
+					}
+				}
+				if (failure != null) {
+					throw failure;
+				}
+				chatModel = requested;
+
+				throw new IllegalStateException(format("%s unavailable, circuit breaker open", requested.provider().name()));
+			}
+
+			private ChatResponse retry(ChatModel candidate, CircuitBreaker breaker, List<ChatMessage> messages) throws Exception {
+				for (int attempt = 1; ; attempt++) {
+					attempts++;
+					try {
+						ChatResponse response = call(candidate, messages);
+						breaker.success();
+
+						return response;
+					}
+					catch (CancellationException e) {
+						// Not a failure of the model, release the call in case it was the trial one
+						breaker.release();
+						throw e;
+					}
+					catch (Exception e) {
+						if (!transientFailure(e) && !(e instanceof TimeoutException)) {
+							// Rejected by a responsive model, such as a bad request, not counted as a failure
+							breaker.release();
+							throw e;
+						}
+						breaker.failure();
+						if (attempt >= RETRY_ATTEMPTS || !transientFailure(e) || breaker.open()) {
+							throw e;
+						}
+					}
+					METRICS.retry(candidate.provider().name());
+					backoff(attempt);
+				}
+			}
+
+			/**
+			 * @return the requested model, followed by the others in case of failover
+			 */
+			private List<ChatModel> candidates(ChatModel requested) {
+				if (fallbackModels.isEmpty()) {
+					return List.of(requested);
+				}
+				int index = fallbackModels.indexOf(requested);
+				List<ChatModel> candidates = new ArrayList<>(fallbackModels.subList(index, fallbackModels.size()));
+				candidates.addAll(fallbackModels.subList(0, index));
+
+				return candidates;
+			}
+		}
+
+		/**
+		 * Writes the given response, once the user message has been written, which is
+		 * usually the case by now. The response is correlated to the user message via
+		 * {@link Chat#PARENT_ID}, unless the user message could not be written.
+		 * @param response the response
+		 * @return the response
+		 */
+		private Entity written(Entity response) {
+			writes.add(userMessageInserted.handle((userMessage, exception) -> {
+				invokeLater(() -> {
+					try {
+						if (userMessage != null) {
+							response.set(Chat.PARENT_ID, userMessage.get(Chat.ID));
+						}
+						write(response, request.id);
+					}
+					catch (EntityValidationException e) {
+						throw new RuntimeException(e);
+					}
+				});
+
+				return null;
+			}));
+
+			return response;
+		}
+
+		private void userMessageFailed(Throwable exception) {
+			Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+			try {
+				write(entity(new RuntimeException("Unable to write the user message: " +
+								messageText(userMessage), cause)), request.id);
 			}
 			catch (EntityValidationException e) {
 				throw new RuntimeException(e);
 			}
 		}
 
-		@Override
-		public void onStarted() {
-			elapsed.clear();
-			started.set(LocalDateTime.now());
-			processing.set(true);
-			elapsedUpdater.start();
+		private ChatResponse chat(ChatModel chatModel, ChatRequest chatRequest) {
+			long started = System.nanoTime();
+			if (stream) {
+				// Discards the partial response of any failed attempt, which may have been by another model
+				streamStarted.accept(chatModel.provider().name());
+			}
+			StreamingChatModel streamingChatModel = streamingChatModels.get(chatModel);
+			if (stream && streamingChatModel != null) {
+				return stream(streamingChatModel, chatRequest, chatModel.provider().name(), started);
+			}
+			ChatResponse response = chatModel.chat(chatRequest);
+			// Without streaming, the first token arrives with the response
+			METRICS.firstToken(chatModel.provider().name(), System.nanoTime() - started);
+
+			return response;
 		}
 
-		private void stopped(boolean isError) {
-			error.set(isError);
-			elapsedUpdater.stop();
-			processing.set(false);
-			elapsed.clear();
-			started.clear();
+		private List<ChatMessage> messages() {
+			if (!memory.is()) {
+				return List.of(userMessage);
+			}
+			ChatEvents.Memory event = new ChatEvents.Memory();
+			event.begin();
+			// The memory is read from the database, so wait for
+			// the chats queued before this prompt to be written
+			priorChats.join();
+			// The prior turns, stored before this prompt
+			List<ChatMessage> messages = new ArrayList<>(conversationMemory.messages(timestamp, memoryTokens.get()));
+			messages.add(userMessage);
+			event.requestId = request.id;
+			event.messages = messages.size();
+			event.commit();
+
+			return messages;
 		}
 
-		private Entity entity(String name, ChatResponse response, Duration responseTime) {
-			TokenUsage tokenUsage = response.metadata().tokenUsage();
+		private ChatResponse stream(StreamingChatModel streamingChatModel, ChatRequest chatRequest, String name, long started) {
+			CompletableFuture<ChatResponse> response = new CompletableFuture<>();
+			streamingChatModel.chat(chatRequest, new StreamingChatResponseHandler() {
+
+				private boolean firstToken = true;
+
+				@Override
+				public void onPartialResponse(String text) {
+					if (firstToken) {
+						firstToken = false;
+						METRICS.firstToken(name, System.nanoTime() - started);
+					}
+					// Discard anything arriving after cancellation
+					if (!response.isDone()) {
+						partialResponse.accept(text);
+					}
+				}
 
+				@Override
+				public void onCompleteResponse(ChatResponse completeResponse) {
+					response.complete(completeResponse);
+				}
+
+				@Override
+				public void onError(Throwable error) {
+					response.completeExceptionally(error);
+				}
+			});
+			try {
+				// Block this worker thread until the stream completes, or it is interrupted
+				return response.get();
+			}
+			catch (InterruptedException e) {
+				response.cancel(true);
+				Thread.currentThread().interrupt();
+				throw new CancellationException();
+			}
+			catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException cause) {
+					throw cause;
+				}
+				throw new RuntimeException(e.getCause());
+			}
+		}
+
+		/**
+		 * Keys the given messages by the stored user message, so that the attachment
+		 * contents are identified by their hash, instead of being digested again.
+		 * @param chatModel the chat model
+		 * @param messages the messages, ending with the user message
+		 * @return the response cache key
+		 */
+		private String cacheKey(ChatModel chatModel, List<ChatMessage> messages) {
+			List<ChatMessage> keyed = new ArrayList<>(messages.subList(0, messages.size() - 1));
+			keyed.add(storedMessage);
+
+			return ResponseCache.key(chatModel, keyed);
+		}
+
+		private Entity entity(String name, ChatResponse response, Duration responseTime, boolean cached) {
+			return responseEntity(entities(), session, name, response, responseTime, cached);
+		}
+
+		/**
+		 * @param message the message
+		 * @param elapsed the time elapsed before the request was cancelled or timed out
+		 * @return a system message
+		 */
+		private Entity entity(String message, Duration elapsed) {
 			return entities().entity(Chat.TYPE)
-							.with(Chat.MESSAGE_TYPE, ChatMessageType.AI)
+							.with(Chat.MESSAGE_TYPE, ChatMessageType.SYSTEM)
 							.with(Chat.SESSION, session)
-							.with(Chat.NAME, name)
+							.with(Chat.NAME, SYSTEM)
 							.with(Chat.TIMESTAMP, LocalDateTime.now())
-							.with(Chat.MESSAGE, response.aiMessage().text())
-							.with(Chat.RESPONSE_TIME, responseTime)
-							.with(Chat.JSON, messageToJson(response.aiMessage()))
-							.with(Chat.INPUT_TOKENS, tokenUsage.inputTokenCount())
-							.with(Chat.OUTPUT_TOKENS, tokenUsage.outputTokenCount())
-							.with(Chat.TOTAL_TOKENS, tokenUsage.totalTokenCount())
+							.with(Chat.MESSAGE, format("%s after %.1f s", message, elapsed.toMillis() / 1000d))
+							.with(Chat.RESPONSE_TIME, elapsed)
 							.build();
 		}
 
@@ -414,15 +1568,160 @@ public final class EntityChatEditModel extends SwingEntityEditModel {
 							.build();
 		}
 
-		private ChatModel chatModel() {
-			return chatModels.selection().item().optional()
-							.map(Item::get)
-							.orElseThrow();
+	}
+
+	/**
+	 * @return the models to prompt, all the ones included in the fan-out,
+	 * in case it is enabled, otherwise the selected one
+	 */
+	private List<ChatModel> promptedModels() {
+		if (fanOut.is()) {
+			List<ChatModel> included = fanOutModels.entrySet().stream()
+							.filter(entry -> entry.getValue().is())
+							.map(Map.Entry::getKey)
+							.toList();
+			if (!included.isEmpty()) {
+				return included;
+			}
 		}
+
+		return List.of(chatModels.selection().item().optional()
+						.map(Item::get)
+						.orElseThrow());
 	}
 
+	/**
+	 * The budgets are specified by the 'llemmy.limit.requests' and 'llemmy.limit.tokens' system
+	 * properties, which can be overridden for each model provider, i.e. 'llemmy.limit.tokens.OPEN_AI'.
+	 * A limited rate limiter is seeded with the responses recorded during the last minute.
+	 * @return a new rate limiter for the given model
+	 */
+	private static RateLimiter rateLimiter(ChatModel chatModel, EntityConnectionProvider connectionProvider) {
+		String name = chatModel.provider().name();
+		RateLimiter rateLimiter = new RateLimiter(
+						Integer.getInteger("llemmy.limit.requests." + name, REQUESTS_PER_MINUTE),
+						Integer.getInteger("llemmy.limit.tokens." + name, TOKENS_PER_MINUTE));
+		if (rateLimiter.limited()) {
+			List<Entity> recent = connectionProvider.connection().select(where(Condition.and(
+											Chat.NAME.equalTo(name),
+											Chat.MESSAGE_TYPE.equalTo(ChatMessageType.AI),
+											Chat.CACHED.equalTo(false),
+											Chat.TIMESTAMP.greaterThan(LocalDateTime.now().minusMinutes(1))))
+							.attributes(Chat.TOTAL_TOKENS, Chat.ATTEMPTS)
+							.build());
+			rateLimiter.consume(recent.stream()
+											.mapToInt(chat -> chat.optional(Chat.ATTEMPTS).orElse(1))
+											.sum(),
+							recent.stream()
+											.mapToInt(chat -> chat.optional(Chat.TOTAL_TOKENS).orElse(0))
+											.sum());
+		}
+
+		return rateLimiter;
+	}
+
+	/**
+	 * @param entities the entities
+	 * @param session the chat session
+	 * @param name the model name
+	 * @param response the response
+	 * @param responseTime the response time
+	 * @param cached true if the response came from the response cache
+	 * @return a new chat entity based on the given response
+	 */
+	static Entity responseEntity(Entities entities, UUID session, String name, ChatResponse response,
+															 Duration responseTime, boolean cached) {
+		TokenUsage tokenUsage = response.metadata().tokenUsage();
+
+		return entities.entity(Chat.TYPE)
+						.with(Chat.MESSAGE_TYPE, ChatMessageType.AI)
+						.with(Chat.SESSION, session)
+						.with(Chat.NAME, name)
+						.with(Chat.TIMESTAMP, LocalDateTime.now())
+						.with(Chat.MESSAGE, response.aiMessage().text())
+						.with(Chat.RESPONSE_TIME, responseTime)
+						.with(Chat.JSON, messageToJson(response.aiMessage()))
+						.with(Chat.INPUT_TOKENS, tokenUsage.inputTokenCount())
+						.with(Chat.OUTPUT_TOKENS, tokenUsage.outputTokenCount())
+						.with(Chat.TOTAL_TOKENS, tokenUsage.totalTokenCount())
+						.with(Chat.CACHED, cached)
+						.build();
+	}
+
+	/**
+	 * @return the output tokens of the given response, zero if unknown
+	 */
+	private static int outputTokens(ChatResponse response) {
+		TokenUsage tokenUsage = response.metadata().tokenUsage();
+
+		return tokenUsage == null || tokenUsage.outputTokenCount() == null ? 0 : tokenUsage.outputTokenCount();
+	}
+
+	/**
+	 * @return the total tokens used by the given response, the reserved tokens if unknown
+	 */
+	private static int usedTokens(ChatResponse response, int reserved) {
+		TokenUsage tokenUsage = response.metadata().tokenUsage();
+		if (tokenUsage == null || tokenUsage.totalTokenCount() == null) {
+			return reserved;
+		}
+
+		return tokenUsage.totalTokenCount();
+	}
+
+	private static CircuitBreaker breaker(ChatModel chatModel) {
+		return BREAKERS.computeIfAbsent(chatModel, model ->
+						new CircuitBreaker(BREAKER_FAILURES, Duration.ofSeconds(BREAKER_OPEN)));
+	}
+
+	/**
+	 * @param exception the exception
+	 * @return true if the exception indicates a transient failure, such as a rate limit,
+	 * a server error or a connection failure, worth retrying
+	 */
+	private static boolean transientFailure(Exception exception) {
+		if (exception instanceof RetriableException) {
+			return true;
+		}
+		Throwable cause = exception;
+		while (cause != null) {
+			if (cause instanceof IOException) {
+				return true;
+			}
+			cause = cause.getCause();
+		}
+
+		return false;
+	}
+
+	/**
+	 * @param queued the queued chat
+	 * @param inserted the inserted chat, null in case writing failed
+	 * @param requestId the id of the request the chat belongs to
+	 */
+	record WrittenChat(Entity queued, Entity inserted, long requestId) {}
+
 	private static final class ChatPersistence implements EntityPersistence {
 
+		private final AttachmentStore attachmentStore;
+		private final ChatIndex index;
+
+		private ChatPersistence(AttachmentStore attachmentStore, ChatIndex index) {
+			this.attachmentStore = attachmentStore;
+			this.index = index;
+		}
+
+		@Override
+		public Collection<Entity> insert(Collection<Entity> entities, EntityConnection connection) {
+			Collection<Entity> inserted = connection.insertSelect(entities);
+			// Store the attachment contents and link them to the inserted messages
+			attachmentStore.store(inserted, connection);
+			// Chats rolled back after being indexed are not found when searching
+			index.add(inserted);
+
+			return inserted;
+		}
+
 		@Override
 		public void delete(Collection<Entity> entities, EntityConnection connection) {
 			// We override the default delete implementation, in order to implement soft delete
@@ -430,6 +1729,7 @@ public final class EntityChatEditModel extends SwingEntityEditModel {
 							.map(this::setDeleted)
 							.filter(Entity::modified)
 							.toList());
+			index.delete(entities);
 		}
 
 		private Entity setDeleted(Entity entity) {
@@ -22,8 +22,10 @@ import is.codion.framework.db.EntityConnectionProvider;
 import is.codion.swing.framework.model.SwingEntityModel;
 
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 
 import java.util.List;
+import java.util.function.Function;
 
 // tag::chat_model[]
 public final class EntityChatModel extends SwingEntityModel {
@@ -31,10 +33,13 @@ public final class EntityChatModel extends SwingEntityModel {
 	/**
 	 * Instantiates a new {@link EntityChatModel} instance
 	 * @param chatModels the chat models
+	 * @param streamingChatModels provides the streaming counterpart of a chat model, null if streaming is not supported
 	 * @param connectionProvider the connection provider
 	 */
-	public EntityChatModel(List<ChatModel> chatModels, EntityConnectionProvider connectionProvider) {
-		super(new EntityChatTableModel(chatModels, connectionProvider));
+	public EntityChatModel(List<ChatModel> chatModels,
+												 Function<ChatModel, StreamingChatModel> streamingChatModels,
+												 EntityConnectionProvider connectionProvider) {
+		super(new EntityChatTableModel(chatModels, streamingChatModels, connectionProvider));
 	}
 }
 // end::chat_model[]
\ No newline at end of file
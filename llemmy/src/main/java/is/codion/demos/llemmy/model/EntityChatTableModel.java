@@ -18,16 +18,36 @@
  */
 package is.codion.demos.llemmy.model;
 
+import is.codion.common.reactive.state.ObservableState;
+import is.codion.common.reactive.state.State;
+import is.codion.common.reactive.value.Value;
 import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.framework.db.EntityConnection.Select;
 import is.codion.framework.db.EntityConnectionProvider;
 import is.codion.framework.domain.entity.Entity;
+import is.codion.framework.domain.entity.OrderBy;
+import is.codion.framework.domain.entity.attribute.Column;
+import is.codion.framework.domain.entity.condition.Condition;
 import is.codion.swing.framework.model.SwingEntityTableModel;
 
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
 
 import static dev.langchain4j.data.message.ChatMessageType.USER;
+import static is.codion.framework.db.EntityConnection.Select.where;
+import static is.codion.framework.domain.entity.OrderBy.ascending;
+import static is.codion.framework.domain.entity.OrderBy.descending;
+import static is.codion.framework.domain.entity.condition.Condition.and;
+import static is.codion.framework.domain.entity.condition.Condition.or;
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.System.getProperty;
+import static java.util.Comparator.comparing;
 
 /**
  * Manages the chat log history.
@@ -35,32 +55,260 @@ import static dev.langchain4j.data.message.ChatMessageType.USER;
 // tag::chat_table_model[]
 public final class EntityChatTableModel extends SwingEntityTableModel {
 
+	// Specifies whether the heavy columns are excluded from the history query and fetched on demand
+	private static final boolean LAZY_COLUMNS = parseBoolean(getProperty("llemmy.history.lazy", "true"));
+	// The maximum number of selected chats for which the heavy columns are kept
+	private static final int CONTENTS_CACHE_SIZE = Integer.getInteger("llemmy.history.cacheSize", 500);
+	// The number of history records fetched at a time
+	private static final int PAGE_SIZE = Integer.getInteger("llemmy.history.pageSize", 200);
+	// The maximum number of pages kept in the history window
+	private static final int WINDOW_PAGES = Integer.getInteger("llemmy.history.windowPages", 3);
+	// The columns selected when paging through the history in lazy mode
+	private static final List<Column<?>> HISTORY_COLUMNS = List.of(Chat.ID, Chat.SESSION, Chat.TIMESTAMP,
+					Chat.NAME, Chat.MESSAGE_TYPE, Chat.RESPONSE_TIME, Chat.INPUT_TOKENS, Chat.OUTPUT_TOKENS,
+					Chat.TOTAL_TOKENS, Chat.CACHED, Chat.ATTEMPTS, Chat.PARENT_ID, Chat.DELETED);
+	// The keyset by which the history is paged
+	private static final Comparator<Entity> KEYSET =
+					comparing((Entity chat) -> chat.get(Chat.TIMESTAMP))
+									.thenComparing(chat -> chat.get(Chat.ID));
+
+	private final ChatContents contents;
+	// The session displayed in the history, the current one unless a past session has been opened
+	private final Value<UUID> session;
+	// Indicates whether a past session is displayed
+	private final State pastSession = State.state();
+	// True while newer history records than the ones in the window are available
+	private boolean newerAvailable = false;
+	// The id of the request the chat being written belongs to, while the window is updated, zero otherwise
+	private long writtenRequestId = 0;
+
 	/**
 	 * Instantiates a new {@link EntityChatTableModel} instance
 	 * @param chatModels the chat models
+	 * @param streamingChatModels provides the streaming counterpart of a chat model, null if streaming is not supported
 	 * @param connectionProvider the connection provider
 	 */
-	public EntityChatTableModel(List<ChatModel> chatModels, EntityConnectionProvider connectionProvider) {
-		super(new EntityChatEditModel(chatModels, connectionProvider));
+	public EntityChatTableModel(List<ChatModel> chatModels,
+															Function<ChatModel, StreamingChatModel> streamingChatModels,
+															EntityConnectionProvider connectionProvider) {
+		super(new EntityChatEditModel(chatModels, streamingChatModels, connectionProvider));
 		EntityChatEditModel editModel = (EntityChatEditModel) editModel();
-		// Include only chat logs from our session
+		// Include only chat logs from our session, until a past session is opened
 		query().condition().get(Chat.SESSION).set().equalTo(editModel.session());
+		this.session = Value.builder()
+						.nonNull(editModel.session())
+						.consumer(this::onSessionChanged)
+						.build();
 		// We implement soft delete (see ChatEditModel), so include
 		// only chat log history records not marked as deleted
 		query().condition().get(Chat.DELETED).set().equalTo(false);
 		// Hardcode the history sorting to the latest at top
 		sort().descending(Chat.TIMESTAMP);
-		// Display the message in the prompt when a history record is selected
+		// At least the size of the history window, to prevent the contents from churning
+		this.contents = new ChatContents(connectionProvider, Math.max(CONTENTS_CACHE_SIZE, PAGE_SIZE * WINDOW_PAGES));
+		if (LAZY_COLUMNS) {
+			// Select only the lightweight columns, the rest are fetched
+			// on demand, when a history record is selected or rendered
+			query().attributes().exclude().set(new HashSet<>(ChatContents.COLUMNS));
+		}
+		// Only the newest page is fetched on refresh, older ones on demand
+		query().limit().set(PAGE_SIZE);
+		// Return to the current session, and reset the window to the newest page before
+		// a prompt is sent, so that the new messages are not added above a gap in the history
+		editModel.processing().addConsumer(processing -> {
+			if (processing && pastSession.is()) {
+				session.set(editModel.session());
+			}
+			else if (processing && newerAvailable) {
+				newerAvailable = false;
+				items().refresh();
+			}
+		});
+		// Display the chats immediately when queued for writing,
+		// replacing them with the inserted ones when written
+		editModel.queued().addConsumer(chat -> {
+			if (!pastSession.is()) {
+				display(chat);
+			}
+		});
+		editModel.written().addConsumer(this::onWritten);
+		// Display the message in the prompt, along with its attachments,
+		// when a history record is selected
 		selection().item().addConsumer(this::onSelection);
 	}
 
+	/**
+	 * Returns the given chat including the heavy columns, {@link Chat#MESSAGE},
+	 * {@link Chat#STACK_TRACE} and {@link Chat#JSON}, which are fetched on demand.
+	 * @param chat the chat
+	 * @return the chat including the heavy columns
+	 */
+	public Entity contents(Entity chat) {
+		return contents.get(chat);
+	}
+
+	/**
+	 * Returns the given chats including the message, for rendering, fetched on demand in chunks,
+	 * without the rest of the heavy columns.
+	 * @param chats the chats
+	 * @return the chats including the message, in the same order
+	 */
+	public List<Entity> messages(List<Entity> chats) {
+		return contents.messages(chats);
+	}
+
+	/**
+	 * Setting a past session displays its history, the current session is
+	 * displayed again once a prompt is sent, or when set explicitly.
+	 * @return the {@link Value} controlling the session displayed in the history
+	 * @see EntityChatEditModel#session()
+	 */
+	public Value<UUID> session() {
+		return session;
+	}
+
+	/**
+	 * Available to listeners while the history window is updated with a written chat.
+	 * @return the id of the request the chat being written belongs to, zero if none
+	 */
+	public long writtenRequestId() {
+		return writtenRequestId;
+	}
+
+	/**
+	 * @return an {@link ObservableState} indicating whether a past session is displayed
+	 */
+	public ObservableState pastSession() {
+		return pastSession.observable();
+	}
+
+	/**
+	 * Fetches the history records preceding the oldest one in the window, using keyset pagination
+	 * on ({@link Chat#TIMESTAMP}, {@link Chat#ID}), evicting the newest ones in case the window is full.
+	 * @return true if older history records were available
+	 */
+	public boolean loadOlder() {
+		Entity oldest = items().get().stream().min(KEYSET).orElse(null);
+		if (oldest == null) {
+			return false;
+		}
+		List<Entity> older = page(or(Chat.TIMESTAMP.lessThan(oldest.get(Chat.TIMESTAMP)),
+										and(Chat.TIMESTAMP.equalTo(oldest.get(Chat.TIMESTAMP)), Chat.ID.lessThan(oldest.get(Chat.ID)))),
+						descending(Chat.TIMESTAMP, Chat.ID));
+		if (older.isEmpty()) {
+			return false;
+		}
+		items().add(older);
+		if (evict(KEYSET.reversed())) {
+			newerAvailable = true;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Fetches the history records following the newest one in the window, using keyset pagination
+	 * on ({@link Chat#TIMESTAMP}, {@link Chat#ID}), evicting the oldest ones in case the window is full.
+	 * @return true if newer history records were available
+	 */
+	public boolean loadNewer() {
+		Entity newest = items().get().stream().max(KEYSET).orElse(null);
+		if (!newerAvailable || newest == null) {
+			return false;
+		}
+		List<Entity> newer = page(or(Chat.TIMESTAMP.greaterThan(newest.get(Chat.TIMESTAMP)),
+										and(Chat.TIMESTAMP.equalTo(newest.get(Chat.TIMESTAMP)), Chat.ID.greaterThan(newest.get(Chat.ID)))),
+						ascending(Chat.TIMESTAMP, Chat.ID));
+		newerAvailable = newer.size() == PAGE_SIZE;
+		if (newer.isEmpty()) {
+			return false;
+		}
+		items().add(newer);
+		evict(KEYSET);
+
+		return true;
+	}
+
+	private List<Entity> page(Condition keyset, OrderBy orderBy) {
+		Select.Builder select = where(and(
+						Chat.SESSION.equalTo(session.get()),
+						Chat.DELETED.equalTo(false),
+						keyset))
+						.orderBy(orderBy)
+						.limit(PAGE_SIZE);
+		if (LAZY_COLUMNS) {
+			select.attributes(HISTORY_COLUMNS);
+		}
+
+		return connectionProvider().connection().select(select.build());
+	}
+
+	/**
+	 * Evicts the history records outside the window
+	 * @param order the eviction order
+	 * @return true if any history records were evicted
+	 */
+	private boolean evict(Comparator<Entity> order) {
+		int excess = items().get().size() - PAGE_SIZE * WINDOW_PAGES;
+		if (excess > 0) {
+			items().remove(items().get().stream()
+							.sorted(order)
+							.limit(excess)
+							.toList());
+
+			return true;
+		}
+
+		return false;
+	}
+
+	private void onSessionChanged(UUID session) {
+		pastSession.set(!session.equals(((EntityChatEditModel) editModel()).session()));
+		query().condition().get(Chat.SESSION).set().equalTo(session);
+		newerAvailable = false;
+		selection().clear();
+		items().refresh();
+	}
+
+	private void onWritten(EntityChatEditModel.WrittenChat chat) {
+		writtenRequestId = chat.requestId();
+		try {
+			items().remove(List.of(chat.queued()));
+			contents.remove(chat.queued());
+			if (chat.inserted() != null && !pastSession.is()) {
+				display(chat.inserted());
+			}
+		}
+		finally {
+			writtenRequestId = 0;
+		}
+	}
+
+	/**
+	 * Adds the given chat to the window, in lazy mode as a copy containing only the history
+	 * columns, with the heavy columns kept in the contents cache, as if fetched on demand.
+	 * @param chat the chat to display
+	 */
+	private void display(Entity chat) {
+		if (LAZY_COLUMNS) {
+			contents.put(chat);
+			Entity history = chat.copy().mutable();
+			ChatContents.COLUMNS.forEach(history::remove);
+			chat = history;
+		}
+		items().add(List.of(chat));
+		evict(KEYSET);
+	}
+
 	private void onSelection(Entity chat) {
 		EntityChatEditModel model = (EntityChatEditModel) editModel();
 		if (chat == null) {
 			model.prompt().clear();
 		}
 		else if (chat.get(Chat.MESSAGE_TYPE) == USER) {
-			model.prompt().set(chat.get(Chat.MESSAGE));
+			Entity userMessage = contents(chat);
+			model.prompt().set(userMessage.get(Chat.MESSAGE));
+			model.restoreAttachments(userMessage);
 		}
 	}
 }
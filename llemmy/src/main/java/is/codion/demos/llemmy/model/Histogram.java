@@ -0,0 +1,82 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of positive values, with logarithmic buckets, four for each power of two,
+ * so that a percentile is accurate to within 25%. Recording a value is a single atomic increment.
+ */
+final class Histogram {
+
+	private static final int BUCKETS = 256;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * @param value the value to record, negative values are recorded as zero
+	 */
+	void record(long value) {
+		counts.incrementAndGet(index(Math.max(0, value)));
+	}
+
+	/**
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the upper bound of the bucket containing the given percentile, zero if no values have been recorded
+	 */
+	long percentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		long target = (long) Math.ceil(percentile / 100 * count);
+		long cumulative = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			cumulative += snapshot[i];
+			if (cumulative > 0 && cumulative >= target) {
+				return upperBound(i);
+			}
+		}
+
+		return 0;
+	}
+
+	static int index(long value) {
+		if (value < 4) {
+			return (int) value;
+		}
+		int highestBit = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) ((value >>> (highestBit - 2)) & 3);
+
+		return (highestBit - 1) * 4 + subBucket;
+	}
+
+	static long upperBound(int index) {
+		if (index < 4) {
+			return index;
+		}
+		int highestBit = index / 4 + 1;
+		int subBucket = index % 4;
+
+		return ((5L + subBucket) << (highestBit - 2)) - 1;
+	}
+}
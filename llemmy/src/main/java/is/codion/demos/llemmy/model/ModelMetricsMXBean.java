@@ -0,0 +1,56 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+/**
+ * The metrics of a chat model, exposed via JMX, the times are in milliseconds.
+ */
+public interface ModelMetricsMXBean {
+
+	/**
+	 * @return the number of calls to the model, including retries
+	 */
+	long getRequests();
+
+	long getErrors();
+
+	long getRetries();
+
+	/**
+	 * @return the ratio of failed calls
+	 */
+	double getErrorRate();
+
+	/**
+	 * @return the ratio of retried calls
+	 */
+	double getRetryRate();
+
+	long getLatencyP50();
+
+	long getLatencyP95();
+
+	long getLatencyP99();
+
+	long getTimeToFirstTokenP50();
+
+	long getTimeToFirstTokenP95();
+
+	double getOutputTokensPerSecond();
+}
@@ -0,0 +1,224 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.UserMessage;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+
+import static is.codion.demos.llemmy.model.ConversationMemory.CHARACTERS_PER_TOKEN;
+
+/**
+ * Token buckets enforcing the requests per minute and tokens per minute budgets of a chat model,
+ * each refilled continuously at the budget rate. A reservation is always granted, possibly
+ * overdrawing the buckets, in which case the caller must wait for them to be credited with the
+ * deficit, so that concurrent callers are queued in the order of their reservations.
+ * The buckets are credited by the refill and by returning the unused part of reservations,
+ * so a waiting caller should check the remaining time again when tokens are returned.
+ * A budget of zero is unlimited. Thread safe, shared by all sessions.
+ */
+final class RateLimiter {
+
+	private static final double NANOS_PER_MINUTE = 60_000_000_000d;
+
+	private final int requestsPerMinute;
+	private final int tokensPerMinute;
+
+	private double requests;
+	private double tokens;
+	// The total credited to each bucket, by the refill and returned tokens, less any tokens charged
+	private double requestsCredited = 0;
+	private double tokensCredited = 0;
+	private long refilled = System.nanoTime();
+	// Completed the next time tokens or requests are returned
+	private CompletableFuture<?> returned = new CompletableFuture<>();
+
+	/**
+	 * @param requestsPerMinute the requests per minute budget, zero for unlimited
+	 * @param tokensPerMinute the tokens per minute budget, zero for unlimited
+	 */
+	RateLimiter(int requestsPerMinute, int tokensPerMinute) {
+		this.requestsPerMinute = requestsPerMinute;
+		this.tokensPerMinute = tokensPerMinute;
+		this.requests = requestsPerMinute;
+		this.tokens = tokensPerMinute;
+	}
+
+	/**
+	 * @return true if either budget is limited
+	 */
+	boolean limited() {
+		return requestsPerMinute > 0 || tokensPerMinute > 0;
+	}
+
+	/**
+	 * Caps the output tokens, so that a single request can not exceed the tokens per minute budget.
+	 * @param inputTokens the estimated input tokens
+	 * @return the maximum number of output tokens, empty if the tokens per minute budget is unlimited
+	 */
+	OptionalInt maxOutputTokens(int inputTokens) {
+		if (tokensPerMinute == 0) {
+			return OptionalInt.empty();
+		}
+
+		return OptionalInt.of(Math.max(1, tokensPerMinute - inputTokens));
+	}
+
+	/**
+	 * Reserves a single request and the given number of tokens.
+	 * @param tokens the number of tokens to reserve
+	 * @return the reservation
+	 */
+	synchronized Reservation reserve(int tokens) {
+		refill();
+		this.requests--;
+		this.tokens -= tokens;
+
+		// Available once the buckets have been credited with the deficit
+		return new Reservation(requestsCredited + Math.max(0, -this.requests),
+						tokensCredited + Math.max(0, -this.tokens));
+	}
+
+	/**
+	 * Returns the unused part of a reservation, or charges for any tokens used above it
+	 * @param reserved the number of tokens reserved
+	 * @param used the number of tokens actually used
+	 */
+	synchronized void reconcile(int reserved, int used) {
+		refill();
+		double credit = Math.min(tokensPerMinute, tokens + reserved - used) - tokens;
+		tokens += credit;
+		tokensCredited += credit;
+		if (credit > 0) {
+			notifyReturned();
+		}
+	}
+
+	/**
+	 * Returns a reservation in full, the request along with its tokens, for a request that was never submitted
+	 * @param reserved the number of tokens reserved
+	 */
+	synchronized void release(int reserved) {
+		refill();
+		double credit = Math.min(requestsPerMinute, requests + 1) - requests;
+		requests += credit;
+		requestsCredited += credit;
+		if (credit > 0) {
+			notifyReturned();
+		}
+		reconcile(reserved, 0);
+	}
+
+	/**
+	 * @return a future completed the next time unused tokens or requests are returned
+	 */
+	synchronized CompletableFuture<?> returned() {
+		return returned;
+	}
+
+	/**
+	 * Consumes the given requests and tokens, used when seeding from recent history
+	 * @param requests the number of requests
+	 * @param tokens the number of tokens
+	 */
+	synchronized void consume(int requests, int tokens) {
+		refill();
+		this.requests -= requests;
+		this.tokens -= tokens;
+	}
+
+	/**
+	 * A rough estimate of the input tokens, based on the text content of the given messages
+	 * @param messages the messages
+	 * @return the estimated number of tokens
+	 */
+	static int estimate(List<ChatMessage> messages) {
+		return messages.stream()
+						.mapToInt(message -> switch (message) {
+							case UserMessage userMessage -> userMessage.contents().stream()
+											.filter(TextContent.class::isInstance)
+											.mapToInt(content -> ((TextContent) content).text().length())
+											.sum();
+							case AiMessage aiMessage -> aiMessage.text() == null ? 0 : aiMessage.text().length();
+							default -> 0;
+						})
+						.sum() / CHARACTERS_PER_TOKEN;
+	}
+
+	private void notifyReturned() {
+		returned.complete(null);
+		returned = new CompletableFuture<>();
+	}
+
+	private void refill() {
+		long now = System.nanoTime();
+		double minutes = (now - refilled) / NANOS_PER_MINUTE;
+		double requestsRefill = Math.min(requestsPerMinute, requests + minutes * requestsPerMinute) - requests;
+		double tokensRefill = Math.min(tokensPerMinute, tokens + minutes * tokensPerMinute) - tokens;
+		requests += requestsRefill;
+		requestsCredited += requestsRefill;
+		tokens += tokensRefill;
+		tokensCredited += tokensRefill;
+		refilled = now;
+	}
+
+	/**
+	 * @return the nanoseconds until the given deficit has been refilled, zero for an unlimited budget
+	 */
+	private static long wait(double deficit, int perMinute) {
+		if (perMinute == 0 || deficit <= 0) {
+			return 0;
+		}
+
+		return (long) (deficit / perMinute * NANOS_PER_MINUTE);
+	}
+
+	/**
+	 * A reservation, available once the buckets have been credited up to the given totals.
+	 */
+	final class Reservation {
+
+		private final double requests;
+		private final double tokens;
+
+		private Reservation(double requests, double tokens) {
+			this.requests = requests;
+			this.tokens = tokens;
+		}
+
+		/**
+		 * @return the time to wait before the reservation is available, zero if available,
+		 * shorter than initially in case tokens have been returned in the meantime
+		 */
+		Duration remaining() {
+			synchronized (RateLimiter.this) {
+				refill();
+
+				return Duration.ofNanos(Math.max(wait(requests - requestsCredited, requestsPerMinute),
+								wait(tokens - tokensCredited, tokensPerMinute)));
+			}
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.ImageContent;
+import dev.langchain4j.data.message.PdfFileContent;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.System.Logger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+
+import static dev.langchain4j.data.message.ChatMessageDeserializer.messageFromJson;
+import static dev.langchain4j.data.message.ChatMessageSerializer.messageToJson;
+import static java.lang.System.Logger.Level.WARNING;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+
+/**
+ * A size bounded, least recently used, cache of chat responses, with an optional on-disk tier,
+ * written in the background, by a single thread.
+ * The cache key covers the chat model, the normalized prompt text and the attachment contents,
+ * identified by their hash when referenced.
+ */
+final class ResponseCache {
+
+	private static final Logger LOG = System.getLogger(ResponseCache.class.getName());
+
+	private static final String JSON = "json";
+	private static final String INPUT_TOKENS = "inputTokens";
+	private static final String OUTPUT_TOKENS = "outputTokens";
+	private static final String TOTAL_TOKENS = "totalTokens";
+
+	private final Map<String, ChatResponse> responses;
+	private final Path directory;
+	// Writes the on-disk tier, null if none
+	private final ExecutorService writer;
+
+	/**
+	 * @param maximumSize the maximum number of responses to keep in memory
+	 * @param directory the directory for the on-disk tier, null for none
+	 */
+	ResponseCache(int maximumSize, Path directory) {
+		this.responses = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ChatResponse> eldest) {
+				return size() > maximumSize;
+			}
+		};
+		this.directory = directory;
+		this.writer = directory == null ? null : newSingleThreadExecutor(Thread.ofPlatform()
+						.name("llemmy-response-cache")
+						.daemon(true)
+						.factory());
+	}
+
+	synchronized Optional<ChatResponse> get(String key) {
+		ChatResponse response = responses.get(key);
+		if (response == null && directory != null) {
+			response = read(key);
+			if (response != null) {
+				responses.put(key, response);
+			}
+		}
+
+		return Optional.ofNullable(response);
+	}
+
+	void put(String key, ChatResponse response) {
+		synchronized (this) {
+			responses.put(key, response);
+		}
+		if (writer != null) {
+			writer.execute(() -> write(key, response));
+		}
+	}
+
+	/**
+	 * @param chatModel the chat model
+	 * @param messages the messages sent to the model, attachments preferably referenced by their hash
+	 * @return a key identifying the given messages sent to the given model
+	 */
+	static String key(ChatModel chatModel, List<ChatMessage> messages) {
+		MessageDigest digest = sha256();
+		update(digest, chatModel.provider().name());
+		update(digest, String.valueOf(chatModel.defaultRequestParameters().modelName()));
+		for (ChatMessage message : messages) {
+			update(digest, message.type().name());
+			switch (message) {
+				case UserMessage userMessage -> userMessage.contents().forEach(content -> update(digest, content));
+				case AiMessage aiMessage -> update(digest, normalize(aiMessage.text()));
+				default -> update(digest, messageToJson(message));
+			}
+		}
+
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, Content content) {
+		switch (content) {
+			case TextContent text -> update(digest, normalize(text.text()));
+			// A reference contains the content hash, no need to digest the content itself
+			case ImageContent image -> update(digest, image.image().url() != null ?
+							image.image().url().toString() : String.valueOf(image.image().base64Data()));
+			case PdfFileContent pdf -> update(digest, pdf.pdfFile().url() != null ?
+							pdf.pdfFile().url().toString() : String.valueOf(pdf.pdfFile().base64Data()));
+			default -> update(digest, content.toString());
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(UTF_8));
+		// Separate the values, so that "ab" + "c" differs from "a" + "bc"
+		digest.update((byte) 0);
+	}
+
+	private static String normalize(String text) {
+		return text == null ? "" : text.strip().replaceAll("\\s+", " ");
+	}
+
+	private ChatResponse read(String key) {
+		Path file = directory.resolve(key + ".properties");
+		if (!Files.exists(file)) {
+			return null;
+		}
+		try (Reader reader = Files.newBufferedReader(file, UTF_8)) {
+			Properties properties = new Properties();
+			properties.load(reader);
+
+			return ChatResponse.builder()
+							.aiMessage((AiMessage) messageFromJson(properties.getProperty(JSON)))
+							.tokenUsage(new TokenUsage(
+											integer(properties, INPUT_TOKENS),
+											integer(properties, OUTPUT_TOKENS),
+											integer(properties, TOTAL_TOKENS)))
+							.build();
+		}
+		catch (IOException | RuntimeException e) {
+			LOG.log(WARNING, "Unable to read cached response: " + file, e);
+			return null;
+		}
+	}
+
+	private void write(String key, ChatResponse response) {
+		Properties properties = new Properties();
+		properties.setProperty(JSON, messageToJson(response.aiMessage()));
+		TokenUsage tokenUsage = response.metadata().tokenUsage();
+		if (tokenUsage != null) {
+			setInteger(properties, INPUT_TOKENS, tokenUsage.inputTokenCount());
+			setInteger(properties, OUTPUT_TOKENS, tokenUsage.outputTokenCount());
+			setInteger(properties, TOTAL_TOKENS, tokenUsage.totalTokenCount());
+		}
+		try {
+			Files.createDirectories(directory);
+			try (Writer writer = Files.newBufferedWriter(directory.resolve(key + ".properties"), UTF_8)) {
+				properties.store(writer, null);
+			}
+		}
+		catch (IOException e) {
+			LOG.log(WARNING, "Unable to write cached response to: " + directory, e);
+		}
+	}
+
+	private static Integer integer(Properties properties, String key) {
+		String value = properties.getProperty(key);
+
+		return value == null ? null : Integer.valueOf(value);
+	}
+
+	private static void setInteger(Properties properties, String key, Integer value) {
+		if (value != null) {
+			properties.setProperty(key, value.toString());
+		}
+	}
+}
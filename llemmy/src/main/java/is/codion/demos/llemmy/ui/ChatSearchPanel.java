@@ -0,0 +1,197 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.ui;
+
+import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.demos.llemmy.model.ChatSearchModel;
+import is.codion.demos.llemmy.model.ChatSearchModel.Highlight;
+import is.codion.demos.llemmy.model.ChatSearchModel.SearchResult;
+import is.codion.framework.domain.entity.Entity;
+import is.codion.swing.common.ui.Utilities;
+import is.codion.swing.common.ui.component.list.FilterList;
+import is.codion.swing.common.ui.control.Control;
+import is.codion.swing.common.ui.key.KeyEvents;
+
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JSplitPane;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static is.codion.swing.common.ui.component.Components.*;
+import static is.codion.swing.common.ui.control.Control.command;
+import static is.codion.swing.common.ui.layout.Layouts.borderLayout;
+import static java.awt.event.KeyEvent.VK_ENTER;
+import static javax.swing.BorderFactory.createTitledBorder;
+
+/**
+ * Searches the chat history of all sessions, displaying the results a page at a time,
+ * with the query terms highlighted, along with the full message of the selected result,
+ * the session of which can be opened in the history.
+ * @see ChatSearchModel
+ */
+final class ChatSearchPanel extends JPanel {
+
+	private final JTextField queryField;
+	private final JList<SearchResult> resultsList;
+	private final JTextArea messageArea = textArea()
+					.rowsColumns(8, 40)
+					.lineWrap(true)
+					.wrapStyleWord(true)
+					.editable(false)
+					.build();
+	private final JLabel statusLabel = label().build();
+	private final JButton previousButton;
+	private final JButton nextButton;
+	private final JButton openButton;
+
+	/**
+	 * @param model the search model
+	 * @param openSession opens the session of a search result in the history
+	 */
+	ChatSearchPanel(ChatSearchModel model, Consumer<UUID> openSession) {
+		super(borderLayout());
+		Control open = Control.builder()
+						.command(() -> model.results().selection().item().optional()
+										.ifPresent(result -> openSession.accept(result.chat().get(Chat.SESSION))))
+						.caption("Open session")
+						.enabled(model.results().selection().empty().not())
+						.build();
+		this.queryField = stringField()
+						.link(model.query())
+						.columns(30)
+						// Enter to search
+						.keyEvent(KeyEvents.builder()
+										.keyCode(VK_ENTER)
+										.action(command(model::search)))
+						.build();
+		this.resultsList = FilterList.builder()
+						.model(model.results())
+						.items()
+						// Enter to open the session of the selected result
+						.keyEvent(KeyEvents.builder()
+										.keyCode(VK_ENTER)
+										.action(open))
+						.build();
+		this.resultsList.setCellRenderer(new SearchResultRenderer());
+		this.previousButton = button()
+						.control(Control.builder()
+										.command(model::previousPage)
+										.caption("Previous")
+										.enabled(model.previous()))
+						.build();
+		this.nextButton = button()
+						.control(Control.builder()
+										.command(model::nextPage)
+										.caption("Next")
+										.enabled(model.next()))
+						.build();
+		this.openButton = button()
+						.control(open)
+						.build();
+		model.status().addConsumer(statusLabel::setText);
+		model.results().selection().item().addConsumer(this::onResultSelected);
+		setBorder(createTitledBorder("Search"));
+		add(borderLayoutPanel()
+						.center(queryField)
+						.east(button()
+										.control(Control.builder()
+														.command(model::search)
+														.caption("Search")))
+						.build(), BorderLayout.NORTH);
+		add(splitPane()
+						.topComponent(scrollPane()
+										.view(resultsList)
+										.build())
+						.bottomComponent(scrollPane()
+										.view(messageArea)
+										.build())
+						.orientation(JSplitPane.VERTICAL_SPLIT)
+						.resizeWeight(0.6)
+						.build(), BorderLayout.CENTER);
+		add(borderLayoutPanel()
+						.center(statusLabel)
+						.east(gridLayoutPanel(1, 3)
+										.addAll(openButton, previousButton, nextButton))
+						.build(), BorderLayout.SOUTH);
+	}
+
+	@Override
+	public void updateUI() {
+		super.updateUI();
+		Utilities.updateUI(queryField, resultsList, messageArea, statusLabel, previousButton, nextButton, openButton);
+	}
+
+	void requestQueryFocus() {
+		queryField.requestFocusInWindow();
+		queryField.selectAll();
+	}
+
+	private void onResultSelected(SearchResult result) {
+		messageArea.setText(result == null ? "" : result.chat().get(Chat.MESSAGE));
+		messageArea.setCaretPosition(0);
+	}
+
+	private static final class SearchResultRenderer extends DefaultListCellRenderer {
+
+		private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+		@Override
+		public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+																									boolean isSelected, boolean cellHasFocus) {
+			SearchResult result = (SearchResult) value;
+
+			return super.getListCellRendererComponent(list, html(result), index, isSelected, cellHasFocus);
+		}
+
+		private static String html(SearchResult result) {
+			Entity chat = result.chat();
+			StringBuilder builder = new StringBuilder("<html><b>")
+							.append(escape(TIMESTAMP_FORMATTER.format(chat.get(Chat.TIMESTAMP)) + " " + chat.get(Chat.NAME)))
+							.append("</b><br>");
+			String snippet = result.snippet();
+			int position = 0;
+			for (Highlight highlight : result.highlights()) {
+				builder.append(escape(snippet.substring(position, highlight.start())))
+								.append("<b><u>")
+								.append(escape(snippet.substring(highlight.start(), highlight.end())))
+								.append("</u></b>");
+				position = highlight.end();
+			}
+
+			return builder.append(escape(snippet.substring(position)))
+							.append("</html>")
+							.toString();
+		}
+
+		private static String escape(String text) {
+			return text.replace("&", "&amp;")
+							.replace("<", "&lt;")
+							.replace(">", "&gt;");
+		}
+	}
+}
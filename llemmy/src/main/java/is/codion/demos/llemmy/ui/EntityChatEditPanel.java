@@ -21,6 +21,8 @@ package is.codion.demos.llemmy.ui;
 import is.codion.common.utilities.item.Item;
 import is.codion.demos.llemmy.model.EntityChatEditModel;
 import is.codion.demos.llemmy.model.EntityChatEditModel.Attachment;
+import is.codion.demos.llemmy.model.EntityChatEditModel.QueuedPrompt;
+import is.codion.demos.llemmy.model.EntityChatEditModel.Request;
 import is.codion.swing.common.ui.Utilities;
 import is.codion.swing.common.ui.component.Components;
 import is.codion.swing.common.ui.component.list.FilterList;
@@ -52,7 +54,6 @@ import static java.awt.event.InputEvent.CTRL_DOWN_MASK;
 import static java.awt.event.KeyEvent.*;
 import static java.lang.String.format;
 import static javax.swing.BorderFactory.createTitledBorder;
-import static javax.swing.SwingUtilities.invokeLater;
 
 /**
  * Manages the UI for chatting with a large language model.
@@ -69,9 +70,12 @@ public final class EntityChatEditPanel extends EntityEditPanel {
 	private final JScrollPane promptScrollPane;
 	private final JList<Attachment> attachmentsList;
 	private final JScrollPane attachmentsScrollPane;
+	private final JList<Request> requestsList;
+	private final JList<QueuedPrompt> queueList;
 	private final JProgressBar progressBar;
 	private final JButton clearButton;
 	private final JButton sendButton;
+	private final JButton cancelButton;
 	private final JComboBox<Item<LookAndFeelEnabler>> lookAndFeelComboBox =
 					LookAndFeelComboBox.builder().build();
 
@@ -82,6 +86,8 @@ public final class EntityChatEditPanel extends EntityEditPanel {
 		this.chatModelPanel = borderLayoutPanel()
 						.center(chatModelComboBox)
 						.build();
+		// Displayed below the combo box while processing
+		this.progressBar = createProgressBar();
 		Control sendControl = createSendControl();
 		this.promptTextArea = createPromptTextArea(sendControl);
 		this.promptScrollPane = scrollPane()
@@ -91,15 +97,28 @@ public final class EntityChatEditPanel extends EntityEditPanel {
 		this.attachmentsScrollPane = scrollPane()
 						.view(attachmentsList)
 						.build();
-		this.progressBar = createProgressBar();
+		this.requestsList = FilterList.builder()
+						.model(model.requests())
+						.items()
+						// Delete to cancel the selected requests
+						.keyEvent(KeyEvents.builder()
+										.keyCode(VK_DELETE)
+										.action(command(this::cancelRequests)))
+						.build();
+		this.queueList = createQueueList();
 		this.clearButton = button()
 						.control(createClearControl())
 						.build();
 		this.sendButton = button()
 						.control(sendControl)
 						.build();
+		this.cancelButton = button()
+						.control(createCancelControl())
+						.build();
 		model.processing().addConsumer(this::onProcessingChanged);
 		model.elapsed().addConsumer(this::onElapsedChanged);
+		// Repaint the attachments, displaying the loading progress
+		model.attachmentChanged().addListener(attachmentsList::repaint);
 		focus().initial().set(promptTextArea);
 	}
 
@@ -141,9 +160,19 @@ public final class EntityChatEditPanel extends EntityEditPanel {
 														.center(promptScrollPane)))
 						.rightComponent(borderLayoutPanel()
 										.north(createLookAndFeelPanel())
-										.center(borderLayoutPanel()
-														.border(createTitledBorder("Attachments"))
-														.center(attachmentsScrollPane)))
+										.center(gridLayoutPanel(3, 1)
+														.addAll(borderLayoutPanel()
+																		.border(createTitledBorder("Attachments"))
+																		.center(attachmentsScrollPane)
+																		.build(), borderLayoutPanel()
+																		.border(createTitledBorder("Requests"))
+																		.center(scrollPane()
+																						.view(requestsList))
+																		.build(), borderLayoutPanel()
+																		.border(createTitledBorder("Queue"))
+																		.center(scrollPane()
+																						.view(queueList))
+																		.build())))
 						.build(), BorderLayout.CENTER);
 	}
 
@@ -151,8 +180,8 @@ public final class EntityChatEditPanel extends EntityEditPanel {
 		return borderLayoutPanel()
 						.border(createTitledBorder("Model"))
 						.center(chatModelPanel)
-						.east(gridLayoutPanel(1, 2)
-										.addAll(clearButton, sendButton))
+						.east(gridLayoutPanel(1, 3)
+										.addAll(clearButton, sendButton, cancelButton))
 						.build();
 	}
 
@@ -183,11 +212,19 @@ public final class EntityChatEditPanel extends EntityEditPanel {
 						.build();
 	}
 
+	private Control createCancelControl() {
+		return Control.builder()
+						.command(model::cancel)
+						.caption("Cancel")
+						.mnemonic('A')
+						// Only enabled while processing
+						.enabled(model.processing())
+						.build();
+	}
+
 	private JComboBox<Item<ChatModel>> createChatModelComboBox() {
 		return comboBox()
 						.model(model.chatModels())
-						// Only enabled when the model is not processing
-						.enabled(model.processing().not())
 						.preferredWidth(200)
 						.build();
 	}
@@ -198,8 +235,6 @@ public final class EntityChatEditPanel extends EntityEditPanel {
 						.rowsColumns(5, 40)
 						.lineWrap(true)
 						.wrapStyleWord(true)
-						// Only enabled when the model is not processing
-						.enabled(model.processing().not())
 						.valid(model.error().not())
 						// Ctrl-Enter sends the prompt
 						.keyEvent(KeyEvents.builder()
@@ -215,8 +250,6 @@ public final class EntityChatEditPanel extends EntityEditPanel {
 						// The List value is based on the items in
 						// the list, as opposed to the selected items.
 						.items()
-						// Only enabled when the model is not processing
-						.enabled(model.processing().not())
 						// Insert to add attachment
 						.keyEvent(KeyEvents.builder()
 										.keyCode(VK_INSERT)
@@ -255,6 +288,41 @@ public final class EntityChatEditPanel extends EntityEditPanel {
 		model.attachments().selection().items().get().forEach(model::removeAttachment);
 	}
 
+	private void cancelRequests() {
+		model.requests().selection().items().get().forEach(model::cancel);
+		requestsList.repaint();
+	}
+
+	private JList<QueuedPrompt> createQueueList() {
+		return FilterList.builder()
+						.model(model.queue())
+						.items()
+						// Enter to edit the selected prompt, removing it from the queue,
+						// unless that would replace the prompt being entered
+						.keyEvent(KeyEvents.builder()
+										.keyCode(VK_ENTER)
+										.action(Control.builder()
+														.command(this::editQueuedPrompt)
+														.enabled(model.draftEmpty())
+														.build()))
+						// Delete to remove the selected prompts from the queue
+						.keyEvent(KeyEvents.builder()
+										.keyCode(VK_DELETE)
+										.action(command(this::removeQueuedPrompts)))
+						.build();
+	}
+
+	private void editQueuedPrompt() {
+		model.queue().selection().item().optional().ifPresent(queuedPrompt -> {
+			model.edit(queuedPrompt);
+			promptTextArea.requestFocus();
+		});
+	}
+
+	private void removeQueuedPrompts() {
+		List.copyOf(model.queue().selection().items().get()).forEach(model.queue().items()::remove);
+	}
+
 	private JProgressBar createProgressBar() {
 		return progressBar()
 						.indeterminate(true)
@@ -264,22 +332,31 @@ public final class EntityChatEditPanel extends EntityEditPanel {
 	}
 
 	private void onProcessingChanged(boolean processing) {
-		chatModelPanel.removeAll();
-		chatModelPanel.add(processing ? progressBar : chatModelComboBox, BorderLayout.CENTER);
-		chatModelPanel.revalidate();
-		chatModelPanel.repaint();
+		// Further prompts can be sent while processing,
+		// so the combo box and prompt remain available
 		if (processing) {
-			progressBar.requestFocusInWindow();
+			chatModelPanel.add(progressBar, BorderLayout.SOUTH);
 		}
 		else {
-			promptTextArea.requestFocusInWindow();
+			chatModelPanel.remove(progressBar);
 		}
+		chatModelPanel.revalidate();
+		chatModelPanel.repaint();
 	}
 
 	private void onElapsedChanged(Duration elapsed) {
-		// Use invokeLater() since this gets called in a background thread
-		invokeLater(() -> progressBar.setString(
-						format("%02d:%02d", elapsed.toMinutes(), elapsed.toSecondsPart())));
+		List<Request> requests = model.requests().items().get();
+		int queued = model.queue().items().get().size();
+		// The longest wait for the rate limits, if any
+		Duration waiting = requests.stream()
+						.map(Request::waiting)
+						.max(Duration::compareTo)
+						.orElse(Duration.ZERO);
+		progressBar.setString(format("%d in progress, %d queued, %02d:%02d%s",
+						requests.size(), queued, elapsed.toMinutes(), elapsed.toSecondsPart(),
+						waiting.isZero() ? "" : ", rate limited " + waiting.toSeconds() + " s"));
+		// Update the elapsed time of each request
+		requestsList.repaint();
 	}
 }
 // end::chat_edit_panel[]
\ No newline at end of file
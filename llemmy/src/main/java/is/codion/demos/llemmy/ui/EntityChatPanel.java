@@ -47,6 +47,7 @@ import static java.awt.event.InputEvent.ALT_DOWN_MASK;
 import static java.awt.event.KeyEvent.*;
 import static java.util.stream.Collectors.joining;
 import static javax.swing.BorderFactory.createTitledBorder;
+import static javax.swing.SwingUtilities.invokeLater;
 
 /**
  * Combines the {@link EntityChatEditPanel} for the chat prompt interface
@@ -60,6 +61,14 @@ public final class EntityChatPanel extends EntityPanel {
 	private final State help = State.builder()
 					.consumer(this::onHelpChanged)
 					.build();
+	private final MetricsPanel metricsPanel;
+	private final State metrics = State.builder()
+					.consumer(this::onMetricsChanged)
+					.build();
+	private final ChatSearchPanel searchPanel;
+	private final State search = State.builder()
+					.consumer(this::onSearchChanged)
+					.build();
 
 	/**
 	 * Instantiates a new {@link EntityChatPanel}
@@ -75,6 +84,9 @@ public final class EntityChatPanel extends EntityPanel {
 										// No base panel needed for the edit panel since we
 										// want it to fill the whole width of the parent panel
 										.editBasePanel(editPanel -> editPanel));
+		this.metricsPanel = new MetricsPanel(((EntityChatEditModel) model.editModel()).metrics());
+		this.searchPanel = new ChatSearchPanel(((EntityChatEditModel) model.editModel()).search(),
+						((EntityChatTableModel) model.tableModel()).session()::set);
 		setupKeyEvents();
 	}
 
@@ -85,12 +97,26 @@ public final class EntityChatPanel extends EntityPanel {
 		return help;
 	}
 
+	/**
+	 * @return the {@link State} controlling whether the metrics panel is visible
+	 */
+	public State metrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the {@link State} controlling whether the search panel is visible
+	 */
+	public State search() {
+		return search;
+	}
+
 	@Override
 	public void updateUI() {
 		super.updateUI();
 		// Here we update the UI of components that may
 		// not be visible during Look & Feel selection
-		Utilities.updateUI(helpPanel);
+		Utilities.updateUI(helpPanel, metricsPanel, searchPanel);
 	}
 
 	private void setupKeyEvents() {
@@ -98,7 +124,6 @@ public final class EntityChatPanel extends EntityPanel {
 		// Note that calling addKeyEvent() assures that the key event is
 		// added to this base panel and to the edit panel as well,
 		// since that may be displayed in a separate window.
-		EntityChatEditModel editModel = (EntityChatEditModel) editModel();
 		EntityChatEditPanel editPanel = (EntityChatEditPanel) editPanel();
 		EntityChatTablePanel tablePanel = (EntityChatTablePanel) tablePanel();
 		// Set the base parameters, the modifier and the condition
@@ -120,20 +145,18 @@ public final class EntityChatPanel extends EntityPanel {
 						.action(command(tablePanel::requestHistoryFocus)));
 		addKeyEvent(keyEvent.keyCode(VK_7)
 						.action(command(helpPanel.shortcuts::requestFocus)));
+		addKeyEvent(keyEvent.keyCode(VK_8)
+						.action(command(this::showSearch)));
 		addKeyEvent(keyEvent.keyCode(VK_UP)
 						.modifiers(CTRL_DOWN_MASK)
 						.action(Control.builder()
 										// Use the built-in method to decrement the selected table model indexes
 										.command(tablePanel.tableModel().selection().indexes()::decrement)
-										// Only enabled while the model is not processing
-										.enabled(editModel.processing().not())
 										.build()));
 		addKeyEvent(keyEvent.keyCode(VK_DOWN)
 						.action(Control.builder()
 										// Use the built-in method to increment the selected table model indexes
 										.command(tablePanel.tableModel().selection().indexes()::increment)
-										// Only enabled while the model is not processing
-										.enabled(editModel.processing().not())
 										.build()));
 	}
 
@@ -148,6 +171,34 @@ public final class EntityChatPanel extends EntityPanel {
 		repaint();
 	}
 
+	private void showSearch() {
+		search.set(true);
+		// Once the panel has been laid out
+		invokeLater(searchPanel::requestQueryFocus);
+	}
+
+	private void onMetricsChanged(boolean visible) {
+		if (visible) {
+			add(metricsPanel, BorderLayout.SOUTH);
+		}
+		else {
+			remove(metricsPanel);
+		}
+		revalidate();
+		repaint();
+	}
+
+	private void onSearchChanged(boolean visible) {
+		if (visible) {
+			add(searchPanel, BorderLayout.WEST);
+		}
+		else {
+			remove(searchPanel);
+		}
+		revalidate();
+		repaint();
+	}
+
 	private static final class HelpPanel extends JPanel {
 
 		private final JTextArea shortcuts = textArea()
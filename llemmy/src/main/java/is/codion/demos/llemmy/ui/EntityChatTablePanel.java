@@ -19,17 +19,22 @@
 package is.codion.demos.llemmy.ui;
 
 import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.demos.llemmy.model.ChatEvents.ChatRefresh;
 import is.codion.demos.llemmy.model.EntityChatEditModel;
 import is.codion.demos.llemmy.model.EntityChatTableModel;
 import is.codion.framework.domain.entity.Entity;
 import is.codion.framework.domain.entity.attribute.Attribute;
 import is.codion.swing.common.ui.component.table.FilterTable;
+import is.codion.swing.common.ui.control.Control;
 import is.codion.swing.framework.ui.EntityTablePanel;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.JTextPane;
+import javax.swing.JViewport;
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Style;
@@ -37,13 +42,31 @@ import javax.swing.text.StyleConstants;
 import javax.swing.text.StyledDocument;
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Point;
+import java.awt.event.AdjustmentEvent;
+import java.awt.geom.Rectangle2D;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
-import static is.codion.swing.common.ui.Utilities.enabled;
+import static dev.langchain4j.data.message.ChatMessageType.USER;
 import static is.codion.swing.common.ui.component.Components.*;
 import static is.codion.swing.common.ui.layout.Layouts.borderLayout;
 import static java.util.Comparator.comparing;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 import static javax.swing.BorderFactory.createTitledBorder;
+import static javax.swing.SwingUtilities.getAncestorOfClass;
+import static javax.swing.SwingUtilities.invokeLater;
 import static javax.swing.UIManager.getColor;
 
 /**
@@ -52,13 +75,35 @@ import static javax.swing.UIManager.getColor;
 // tag::chat_table_panel[]
 public final class EntityChatTablePanel extends EntityTablePanel {
 
+	private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss");
+	private static final Comparator<Entity> CHAT_ORDER =
+					comparing((Entity chat) -> chat.get(Chat.TIMESTAMP))
+									.thenComparing(chat -> chat.get(Chat.ID));
+
 	private final JTextPane chatPane = textPane()
 					.editable(false)
 					.build();
+	private final JScrollPane chatScrollPane = scrollPane()
+					.view(chatPane)
+					.build();
 	private final StyledDocument document = chatPane.getStyledDocument();
 	private final Style userStyle = document.addStyle("user", null);
 	private final Style systemStyle = document.addStyle("system", null);
 
+	// The chats currently displayed in the chat document, in order
+	private final List<ChatSegment> segments = new ArrayList<>();
+	// The formatted chat text, mapped to the chat id
+	private final Map<Integer, String> formattedChats = new HashMap<>();
+
+	// The document offset of the response currently being streamed, -1 if none
+	private int streamingOffset = -1;
+	// When the response currently being streamed started, null if none
+	private LocalDateTime streamingStarted;
+	// The name of the model streaming the current response
+	private String streamingModel = "";
+	// True while a history page is being loaded
+	private boolean paging = false;
+
 	/**
 	 * Instantiates a new {@link EntityChatTablePanel}
 	 * @param tableModel the {@link EntityChatTableModel} on which to base the panel
@@ -78,6 +123,12 @@ public final class EntityChatTablePanel extends EntityTablePanel {
 		// Refresh the chat each time the included items or selection changes
 		tableModel.items().included().addListener(this::refreshChat);
 		tableModel.selection().items().addListener(this::refreshChat);
+		// Append partial responses to the chat as they arrive
+		chatEditModel().partialResponse().addConsumer(this::onPartialResponse);
+		// Start over each time a request is attempted, in case of retries or failovers
+		chatEditModel().streamStarted().addConsumer(this::onStreamStarted);
+		// Page through the history when the chat is scrolled to the top or bottom
+		chatScrollPane.getVerticalScrollBar().addAdjustmentListener(this::onChatScrolled);
 		configureTable();
 		configureStyles();
 	}
@@ -88,7 +139,7 @@ public final class EntityChatTablePanel extends EntityTablePanel {
 		if (chatPane != null) {
 			// In case the Look & Feel changed
 			// which affects the colors
-			refreshChat();
+			rebuildChat();
 		}
 	}
 
@@ -101,12 +152,22 @@ public final class EntityChatTablePanel extends EntityTablePanel {
 						.resizeWeight(0.75)
 						.leftComponent(borderLayoutPanel()
 										.border(createTitledBorder("Chat"))
-										.center(scrollPane()
-														.view(chatPane)))
+										.center(chatScrollPane))
 						.rightComponent(borderLayoutPanel()
 										.border(createTitledBorder("History"))
-										.center(tableComponent))
+										.center(tableComponent)
+										// Past sessions are opened via the search panel
+										.south(button()
+														.control(Control.builder()
+																		.command(this::displayCurrentSession)
+																		.caption("Current session")
+																		.enabled(chatTableModel().pastSession()))))
 						.build(), BorderLayout.CENTER);
+		// Page through the history when the table is scrolled to the top or bottom
+		JScrollPane tableScrollPane = (JScrollPane) getAncestorOfClass(JScrollPane.class, table());
+		if (tableScrollPane != null) {
+			tableScrollPane.getVerticalScrollBar().addAdjustmentListener(this::onHistoryScrolled);
+		}
 	}
 
 	void requestChatFocus() {
@@ -130,23 +191,284 @@ public final class EntityChatTablePanel extends EntityTablePanel {
 		StyleConstants.setBackground(userStyle, getColor("TextPane.foreground"));
 	}
 
-	private void refreshChat() {
-		// In case the Look & Feel has changed
+	void rebuildChat() {
+		// The style attributes are copied into the document when
+		// text is inserted, so the whole document must be rebuilt
 		configureUserStyle();
+		String streamed = detachStreamedResponse();
+		chatPane.setText("");
+		segments.clear();
+		refreshChat(streamed);
+	}
+
+	void refreshChat() {
+		refreshChat(detachStreamedResponse());
+	}
+
+	/**
+	 * @param streamed the response being streamed, null if none
+	 */
+	private void refreshChat(String streamed) {
+		ChatRefresh event = new ChatRefresh();
+		event.begin();
 		// We display all the chat history if the selection is empty,
 		// otherwise only the selected history
-		List<Entity> chats = tableModel().selection().empty().is() ?
+		boolean displayAll = tableModel().selection().empty().is();
+		List<Entity> chats = (displayAll ?
 						tableModel().items().included().get() :
-						tableModel().selection().items().get();
-		chatPane.setText("");
-		chats.stream()
-						.sorted(comparing(chat -> chat.get(Chat.TIMESTAMP)))
-						.forEach(this::addToChatDocument);
+						tableModel().selection().items().get()).stream()
+						.sorted(CHAT_ORDER)
+						.toList();
+		if (displayAll) {
+			// Discard the formatted text of chats no longer available
+			formattedChats.keySet().retainAll(chats.stream()
+							.map(chat -> chat.get(Chat.ID))
+							.collect(toSet()));
+		}
+		// Fetch only the message of the chats not yet formatted
+		Map<Integer, Entity> contents = chatTableModel().messages(chats.stream()
+										.filter(chat -> !formattedChats.containsKey(chat.get(Chat.ID)))
+										.toList()).stream()
+						.collect(toMap(chat -> chat.get(Chat.ID), identity()));
+		updateChatDocument(chats, contents);
+		// Keep the response being streamed at the end, until the final response replaces it
+		attachStreamedResponse(streamed);
+		if (event.shouldCommit()) {
+			event.requestId = chatTableModel().writtenRequestId();
+			event.chats = chats.size();
+			event.formatted = contents.size();
+			event.commit();
+		}
+	}
+
+	/**
+	 * Walks the displayed chats and the chats to display in order,
+	 * removing and inserting only the chats that differ.
+	 * @param chats the chats to display, in order
+	 * @param contents the chats including the message, mapped to the chat id
+	 */
+	private void updateChatDocument(List<Entity> chats, Map<Integer, Entity> contents) {
+		List<ChatSegment> updated = new ArrayList<>(chats.size());
+		int offset = 0;
+		int segmentIndex = 0;
+		int chatIndex = 0;
+		try {
+			while (segmentIndex < segments.size() || chatIndex < chats.size()) {
+				ChatSegment segment = segmentIndex < segments.size() ? segments.get(segmentIndex) : null;
+				Entity chat = chatIndex < chats.size() ? chats.get(chatIndex) : null;
+				int comparison = segment == null ? 1 : chat == null ? -1 : CHAT_ORDER.compare(segment.chat(), chat);
+				if (comparison == 0 && unchanged(segment.chat(), chat)) {
+					updated.add(segment);
+					offset += segment.length();
+					segmentIndex++;
+					chatIndex++;
+				}
+				else if (comparison <= 0) {
+					// Either removed or modified, in which case it is re-inserted below
+					document.remove(offset, segment.length());
+					if (comparison == 0) {
+						formattedChats.remove(chat.get(Chat.ID));
+					}
+					segmentIndex++;
+				}
+				else {
+					String text = formattedChats.computeIfAbsent(chat.get(Chat.ID), id ->
+									Objects.requireNonNullElseGet(contents.get(id), () -> chatTableModel().messages(List.of(chat)).getFirst()) + "\n\n");
+					document.insertString(offset, text, style(chat));
+					if (finalResponse(chat)) {
+						streamingStarted = null;
+					}
+					updated.add(new ChatSegment(chat, text.length()));
+					offset += text.length();
+					chatIndex++;
+				}
+			}
+		}
+		catch (BadLocationException e) {
+			throw new RuntimeException(e);
+		}
+		segments.clear();
+		segments.addAll(updated);
+	}
+
+	/**
+	 * Removes the response being streamed from the end of the document, while the chats are updated
+	 * @return the response being streamed, null if none
+	 */
+	private String detachStreamedResponse() {
+		if (streamingOffset == -1) {
+			return null;
+		}
+		try {
+			int length = document.getLength() - streamingOffset;
+			String streamed = document.getText(streamingOffset, length);
+			document.remove(streamingOffset, length);
+			streamingOffset = -1;
+
+			return streamed;
+		}
+		catch (BadLocationException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Adds the response being streamed back to the end of the document, unless the final response has arrived
+	 * @param streamed the response being streamed, null if none
+	 */
+	private void attachStreamedResponse(String streamed) {
+		if (streamed != null && streamingStarted != null) {
+			try {
+				streamingOffset = document.getLength();
+				document.insertString(streamingOffset, streamed, null);
+			}
+			catch (BadLocationException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * @param chat the chat being inserted
+	 * @return true if the chat is the final response replacing the response being streamed,
+	 * that is, a response or a system message, i.e. an error, created after the streaming started
+	 */
+	private boolean finalResponse(Entity chat) {
+		return streamingStarted != null && chat.get(Chat.MESSAGE_TYPE) != USER &&
+						!chat.get(Chat.TIMESTAMP).isBefore(streamingStarted);
+	}
+
+	private static boolean unchanged(Entity displayed, Entity chat) {
+		return displayed == chat || (Objects.equals(displayed.get(Chat.NAME), chat.get(Chat.NAME)) &&
+						displayed.get(Chat.MESSAGE_TYPE) == chat.get(Chat.MESSAGE_TYPE) &&
+						// The message is not available when lazily loaded,
+						// in which case it has not been modified since displayed
+						(!chat.contains(Chat.MESSAGE) || (displayed.contains(Chat.MESSAGE) &&
+										Objects.equals(displayed.get(Chat.MESSAGE), chat.get(Chat.MESSAGE)))));
+	}
+
+	private void onChatScrolled(AdjustmentEvent event) {
+		// The chat only displays the selected history, if any
+		if (tableModel().selection().empty().is()) {
+			// The oldest history is at the top of the chat
+			onScrolled(event, chatTableModel()::loadOlder, chatTableModel()::loadNewer, this::keepChatPosition);
+		}
 	}
 
-	private void addToChatDocument(Entity chat) {
+	private void onHistoryScrolled(AdjustmentEvent event) {
+		// The newest history is at the top of the table
+		onScrolled(event, chatTableModel()::loadNewer, chatTableModel()::loadOlder, this::keepHistoryPosition);
+	}
+
+	private void onScrolled(AdjustmentEvent event, BooleanSupplier loadAbove, BooleanSupplier loadBelow,
+													Consumer<BooleanSupplier> keepPosition) {
+		JScrollBar scrollBar = (JScrollBar) event.getAdjustable();
+		boolean scrollable = scrollBar.getMaximum() > scrollBar.getVisibleAmount();
+		if (!paging && scrollable && !event.getValueIsAdjusting()) {
+			paging = true;
+			try {
+				if (scrollBar.getValue() == scrollBar.getMinimum()) {
+					keepPosition.accept(loadAbove);
+				}
+				else if (scrollBar.getValue() + scrollBar.getVisibleAmount() >= scrollBar.getMaximum()) {
+					keepPosition.accept(loadBelow);
+				}
+			}
+			finally {
+				paging = false;
+			}
+		}
+	}
+
+	/**
+	 * Loads a history page, keeping the chat displayed at the top of the chat pane in place
+	 * @param load loads the page
+	 */
+	private void keepChatPosition(BooleanSupplier load) {
+		JViewport viewport = chatScrollPane.getViewport();
+		Point position = viewport.getViewPosition();
+		int offset = chatPane.viewToModel2D(position);
+		Integer anchor = null;
+		int anchorOffset = 0;
+		for (ChatSegment segment : segments) {
+			if (offset < anchorOffset + segment.length()) {
+				anchor = segment.chat().get(Chat.ID);
+				break;
+			}
+			anchorOffset += segment.length();
+		}
+		if (load.getAsBoolean() && anchor != null) {
+			int delta = offset - anchorOffset;
+			int updatedOffset = 0;
+			for (ChatSegment segment : segments) {
+				if (segment.chat().get(Chat.ID).equals(anchor)) {
+					scrollTo(updatedOffset + delta, position.x);
+					break;
+				}
+				updatedOffset += segment.length();
+			}
+		}
+	}
+
+	private void scrollTo(int offset, int x) {
+		// Wait for the chat pane layout to be updated
+		invokeLater(() -> {
+			try {
+				Rectangle2D bounds = chatPane.modelToView2D(offset);
+				if (bounds != null) {
+					chatScrollPane.getViewport().setViewPosition(new Point(x, (int) bounds.getY()));
+				}
+			}
+			catch (BadLocationException e) {
+				throw new RuntimeException(e);
+			}
+		});
+	}
+
+	/**
+	 * Loads a history page, keeping the history record displayed at the top of the table in place
+	 * @param load loads the page
+	 */
+	private void keepHistoryPosition(BooleanSupplier load) {
+		JTable table = table();
+		JViewport viewport = (JViewport) table.getParent();
+		Point position = viewport.getViewPosition();
+		int row = table.rowAtPoint(position);
+		List<Entity> items = tableModel().items().included().get();
+		Entity anchor = row == -1 ? null : items.get(row);
+		int delta = row == -1 ? 0 : position.y - table.getCellRect(row, 0, true).y;
+		if (load.getAsBoolean() && anchor != null) {
+			int updatedRow = tableModel().items().included().get().indexOf(anchor);
+			if (updatedRow != -1) {
+				viewport.setViewPosition(new Point(position.x, table.getCellRect(updatedRow, 0, true).y + delta));
+			}
+		}
+	}
+
+	private void onPartialResponse(String partialResponse) {
+		// Use invokeLater() since this gets called in a background thread
+		invokeLater(() -> addToChatDocument(partialResponse));
+	}
+
+	private void onStreamStarted(String model) {
+		// Use invokeLater() since this gets called in a background thread
+		invokeLater(() -> {
+			// Discard the partial response of any previous attempt
+			detachStreamedResponse();
+			streamingStarted = null;
+			streamingModel = model;
+		});
+	}
+
+	private void addToChatDocument(String partialResponse) {
 		try {
-			document.insertString(document.getLength(), chat.toString() + "\n\n", style(chat));
+			if (streamingOffset == -1) {
+				// The first partial response, add the same prefix as the entity formatter
+				streamingOffset = document.getLength();
+				streamingStarted = LocalDateTime.now();
+				document.insertString(streamingOffset, LocalTime.now().format(TIME_FORMATTER) + " @ " + streamingModel + ": ", null);
+			}
+			document.insertString(document.getLength(), partialResponse, null);
 		}
 		catch (BadLocationException e) {
 			throw new RuntimeException(e);
@@ -161,11 +483,22 @@ public final class EntityChatTablePanel extends EntityTablePanel {
 		};
 	}
 
+	private record ChatSegment(Entity chat, int length) {}
+
+	private void displayCurrentSession() {
+		chatTableModel().session().set(chatEditModel().session());
+	}
+
+	private EntityChatTableModel chatTableModel() {
+		return (EntityChatTableModel) tableModel();
+	}
+
+	private EntityChatEditModel chatEditModel() {
+		return (EntityChatEditModel) tableModel().editModel();
+	}
+
 	private void configureTable() {
 		FilterTable<Entity, Attribute<?>> table = table();
-		EntityChatEditModel editModel = (EntityChatEditModel) tableModel().editModel();
-		// Disable the table while the model is processing
-		enabled(editModel.processing().not(), table);
 		// Set some minimum table column widths
 		table.columnModel().column(Chat.TIMESTAMP).setMinWidth(160);
 		table.columnModel().column(Chat.MESSAGE_TYPE).setMinWidth(80);
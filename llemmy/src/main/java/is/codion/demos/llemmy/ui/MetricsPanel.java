@@ -0,0 +1,116 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.ui;
+
+import is.codion.common.utilities.scheduler.TaskScheduler;
+import is.codion.demos.llemmy.model.ChatMetrics;
+import is.codion.demos.llemmy.model.ChatMetrics.Percentiles;
+import is.codion.demos.llemmy.model.ChatMetrics.Snapshot;
+import is.codion.swing.common.ui.Utilities;
+
+import javax.swing.JPanel;
+import javax.swing.JTextArea;
+import javax.swing.UIManager;
+import java.awt.BorderLayout;
+import java.awt.Font;
+import java.util.concurrent.TimeUnit;
+
+import static is.codion.swing.common.ui.component.Components.scrollPane;
+import static is.codion.swing.common.ui.component.Components.textArea;
+import static is.codion.swing.common.ui.layout.Layouts.borderLayout;
+import static java.lang.String.format;
+import static javax.swing.BorderFactory.createTitledBorder;
+import static javax.swing.SwingUtilities.invokeLater;
+
+/**
+ * Displays the latency and throughput metrics of each model, updated each second while visible.
+ * @see ChatMetrics
+ */
+final class MetricsPanel extends JPanel {
+
+	private static final String MODEL_FORMAT = "%-12s %8s %7s %7s %23s %23s %8s%n";
+	private static final String SHARED_FORMAT = "%-12s %23s%n";
+
+	private final ChatMetrics metrics;
+	private final JTextArea metricsArea = textArea()
+					.rowsColumns(8, 100)
+					.font(monospaceFont())
+					.editable(false)
+					.build();
+	private final TaskScheduler updater =
+					TaskScheduler.builder()
+									.task(() -> invokeLater(this::update))
+									.interval(1, TimeUnit.SECONDS)
+									.build();
+
+	MetricsPanel(ChatMetrics metrics) {
+		super(borderLayout());
+		this.metrics = metrics;
+		setBorder(createTitledBorder("Metrics"));
+		add(scrollPane()
+						.view(metricsArea)
+						.build(), BorderLayout.CENTER);
+	}
+
+	@Override
+	public void updateUI() {
+		super.updateUI();
+		Utilities.updateUI(metricsArea);
+	}
+
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		update();
+		updater.start();
+	}
+
+	@Override
+	public void removeNotify() {
+		super.removeNotify();
+		updater.stop();
+	}
+
+	private void update() {
+		StringBuilder builder = new StringBuilder()
+						.append(format(MODEL_FORMAT, "Model", "Requests", "Errors", "Retries",
+										"Latency p50/p95/p99", "First token p50/p95/p99", "Tokens/s"));
+		for (Snapshot model : metrics.models()) {
+			builder.append(format(MODEL_FORMAT, model.model(), model.requests(),
+							format("%.1f%%", model.errorRate() * 100), format("%.1f%%", model.retryRate() * 100),
+							percentiles(model.latency()), percentiles(model.timeToFirstToken()),
+							format("%.1f", model.outputTokensPerSecond())));
+		}
+		builder.append(System.lineSeparator())
+						.append(format(SHARED_FORMAT, "Queue wait", percentiles(metrics.queueWait())))
+						.append(format(SHARED_FORMAT, "DB insert", percentiles(metrics.insertTime())));
+		metricsArea.setText(builder.toString());
+	}
+
+	private static String percentiles(Percentiles percentiles) {
+		return format("%d/%d/%d ms", percentiles.p50().toMillis(),
+						percentiles.p95().toMillis(), percentiles.p99().toMillis());
+	}
+
+	private static Font monospaceFont() {
+		Font font = UIManager.getFont("TextArea.font");
+
+		return new Font(Font.MONOSPACED, font.getStyle(), font.getSize());
+	}
+}
@@ -20,6 +20,9 @@
  * Llemmy demo.
  */
 module is.codion.demos.llemmy.ui {
+	requires java.management;
+	requires java.sql;
+	requires jdk.jfr;
 	requires java.net.http;
 
 	requires is.codion.framework.db.local;
@@ -30,6 +33,11 @@ module is.codion.demos.llemmy.ui {
 	requires com.fasterxml.jackson.core;
 	requires com.formdev.flatlaf.extras;
 	requires com.formdev.flatlaf.fonts.inter;
+	requires org.apache.lucene.core;
+	requires org.apache.lucene.analysis.common;
+	requires org.apache.lucene.queryparser;
 
 	exports is.codion.demos.llemmy;
+	// For the metrics MBeans
+	exports is.codion.demos.llemmy.model to java.management;
 }
\ No newline at end of file
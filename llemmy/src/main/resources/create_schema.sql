@@ -12,7 +12,10 @@ create table llemmy.chat (
     input_tokens integer,
     output_tokens integer,
     total_tokens integer,
+    cached boolean default false not null,
+    attempts integer,
     json json,
+    parent_id integer references llemmy.chat(id),
     deleted boolean default false not null
 );
 
@@ -22,5 +25,32 @@ comment on column llemmy.chat.response_time is 'The AI response time in milliseo
 comment on column llemmy.chat.input_tokens is 'The input token count';
 comment on column llemmy.chat.output_tokens is 'The output token count';
 comment on column llemmy.chat.total_tokens is 'The total token count';
+comment on column llemmy.chat.cached is 'True if the response was served from the response cache';
+comment on column llemmy.chat.attempts is 'The number of model calls made for the response, including retries';
 comment on column llemmy.chat.json is 'The message in JSON format';
-comment on column llemmy.chat.deleted is 'True if the row has been soft-deleted';
\ No newline at end of file
+comment on column llemmy.chat.parent_id is 'The user message a response originates from';
+comment on column llemmy.chat.deleted is 'True if the row has been soft-deleted';
+
+create table llemmy.attachment (
+    hash varchar(64) primary key,
+    name text not null,
+    mime_type varchar(50) not null,
+    size bigint not null,
+    data blob not null
+);
+
+comment on column llemmy.attachment.hash is 'The SHA-256 hash of the attachment content';
+comment on column llemmy.attachment.name is 'The file name the content was first attached with';
+comment on column llemmy.attachment.size is 'The content size in bytes';
+
+create table llemmy.chat_attachment (
+    chat_id integer not null references llemmy.chat(id),
+    attachment_hash varchar(64) not null references llemmy.attachment(hash),
+    primary key (chat_id, attachment_hash)
+);
+
+-- The chat history query filters on the session and the deleted flag, ordered by the latest first,
+-- and is paged by (timestamp, id)
+create index llemmy.chat_session_idx on llemmy.chat(session, deleted, timestamp desc, id desc);
+-- For finding the messages referencing an attachment
+create index llemmy.chat_attachment_hash_idx on llemmy.chat_attachment(attachment_hash);
@@ -0,0 +1,9 @@
+-- Upgrades a database created by an earlier version, adding the columns
+-- introduced since the file based database became available.
+-- Idempotent, run each time an existing database is opened.
+
+alter table llemmy.chat add column if not exists attempts integer;
+alter table llemmy.chat add column if not exists parent_id integer references llemmy.chat(id);
+
+comment on column llemmy.chat.attempts is 'The number of model calls made for the response, including retries';
+comment on column llemmy.chat.parent_id is 'The user message a response originates from';
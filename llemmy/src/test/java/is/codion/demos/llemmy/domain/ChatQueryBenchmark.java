@@ -0,0 +1,260 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.domain;
+
+import is.codion.common.db.database.Database;
+import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.framework.db.EntityConnection;
+import is.codion.framework.db.EntityConnectionProvider;
+import is.codion.framework.db.local.LocalEntityConnectionProvider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static is.codion.common.utilities.user.User.user;
+import static is.codion.framework.db.EntityConnection.Select.where;
+import static is.codion.framework.domain.entity.OrderBy.descending;
+import static is.codion.framework.domain.entity.condition.Condition.and;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Loads the chat table with synthetic sessions and reports the latency of the chat history
+ * refresh query, as issued by the chat table model, before and after the indexes from
+ * create_schema.sql are created, along with the query plans.
+ * Exits with a non-zero status in case the indexed query plan does not use the indexes.
+ * <p>
+ * Run with: gradlew llemmy:chatQueryBenchmark -Dllemmy.benchmark.sessions=10000 -Dllemmy.benchmark.messages=1000
+ */
+public final class ChatQueryBenchmark {
+
+	// The number of synthetic sessions
+	private static final int SESSIONS = Integer.getInteger("llemmy.benchmark.sessions", 1_000);
+	// The number of messages per session
+	private static final int MESSAGES = Integer.getInteger("llemmy.benchmark.messages", 100);
+	// The number of measured refresh queries, each for a random session
+	private static final int ITERATIONS = Integer.getInteger("llemmy.benchmark.iterations", 200);
+	// The number of refresh queries run before measuring
+	private static final int WARMUP = Integer.getInteger("llemmy.benchmark.warmup", 20);
+
+	private static final int BATCH_SIZE = 10_000;
+	private static final String INSERT = "insert into llemmy.chat " +
+					"(session, timestamp, name, message_type, message, response_time, output_tokens, deleted) " +
+					"values (?, ?, ?, ?, ?, ?, ?, ?)";
+	// The equivalent of the refresh query, for the query plan
+	private static final String REFRESH = "select id, session, timestamp, name, message_type " +
+					"from llemmy.chat where session = ? and deleted = false order by timestamp desc";
+
+	private final Random random = new Random(42);
+	private final List<UUID> sessions = new ArrayList<>(SESSIONS);
+
+	private ChatQueryBenchmark() {}
+
+	public static void main(String[] args) throws Exception {
+		Database database = Database.instance();
+		EntityConnectionProvider connectionProvider = LocalEntityConnectionProvider.builder()
+						.database(database)
+						.domain(new Llemmy())
+						.user(user("sa"))
+						.build();
+		try (Connection connection = DriverManager.getConnection(database.url(), "sa", "")) {
+			new ChatQueryBenchmark().run(connectionProvider.connection(), connection);
+		}
+		finally {
+			connectionProvider.close();
+		}
+	}
+
+	private void run(EntityConnection entityConnection, Connection connection) throws Exception {
+		List<String> indexes = indexes();
+		System.out.println("Loading " + SESSIONS + " sessions with " + MESSAGES + " messages each");
+		long loadStarted = System.nanoTime();
+		// Drop the indexes, they would only slow the loading down
+		try (Statement statement = connection.createStatement()) {
+			for (String index : indexes) {
+				statement.execute("drop index " + indexName(index));
+			}
+		}
+		load(connection);
+		System.out.println("Loaded in " + (System.nanoTime() - loadStarted) / 1_000_000 + " ms");
+
+		System.out.println();
+		System.out.println("Without indexes");
+		explain(connection);
+		double[] before = measure(entityConnection);
+
+		long indexStarted = System.nanoTime();
+		try (Statement statement = connection.createStatement()) {
+			for (String index : indexes) {
+				statement.execute(index);
+			}
+		}
+		System.out.println();
+		System.out.println("With indexes, created in " + (System.nanoTime() - indexStarted) / 1_000_000 + " ms");
+		String plan = explain(connection);
+		double[] after = measure(entityConnection);
+
+		System.out.println();
+		System.out.printf("Speedup (p50): %.1fx%n", before[0] / after[0]);
+		// The refresh query should use the indexes on the chat table
+		List<String> unused = indexes.stream()
+						.filter(index -> index.contains(" on llemmy.chat("))
+						.map(ChatQueryBenchmark::indexName)
+						.filter(index -> !plan.toLowerCase().contains(index.substring(index.indexOf('.') + 1)))
+						.toList();
+		if (!unused.isEmpty()) {
+			System.err.println("The refresh query does not use the index: " + unused);
+			System.exit(1);
+		}
+	}
+
+	private void load(Connection connection) throws SQLException {
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		LocalDateTime start = LocalDateTime.now().minusMonths(6);
+		try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+			int rows = 0;
+			for (int session = 0; session < SESSIONS; session++) {
+				UUID id = UUID.randomUUID();
+				sessions.add(id);
+				LocalDateTime timestamp = start.plusMinutes(random.nextInt(250_000));
+				for (int message = 0; message < MESSAGES; message++) {
+					boolean user = message % 2 == 0;
+					timestamp = timestamp.plusSeconds(1 + random.nextInt(60));
+					statement.setObject(1, id);
+					statement.setTimestamp(2, Timestamp.valueOf(timestamp));
+					statement.setString(3, user ? "user" : "model");
+					statement.setString(4, user ? "USER" : "AI");
+					statement.setString(5, "Synthetic message number " + message + " of session " + id);
+					statement.setObject(6, user ? null : 100 + random.nextInt(10_000));
+					statement.setObject(7, user ? null : 10 + random.nextInt(1_000));
+					// Every tenth message soft deleted
+					statement.setBoolean(8, random.nextInt(10) == 0);
+					statement.addBatch();
+					if (++rows % BATCH_SIZE == 0) {
+						statement.executeBatch();
+						connection.commit();
+					}
+				}
+			}
+			statement.executeBatch();
+			connection.commit();
+		}
+		finally {
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	/**
+	 * Runs the refresh query, as issued by the chat table model, for random sessions.
+	 * @return the p50, p95 and p99 latency in milliseconds
+	 */
+	private double[] measure(EntityConnection connection) {
+		for (int i = 0; i < WARMUP; i++) {
+			refresh(connection, randomSession());
+		}
+		double[] latencies = new double[ITERATIONS];
+		int rows = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			UUID session = randomSession();
+			long started = System.nanoTime();
+			rows += refresh(connection, session);
+			latencies[i] = (System.nanoTime() - started) / 1_000_000d;
+		}
+		Arrays.sort(latencies);
+		double[] percentiles = {percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99)};
+		System.out.printf("Refresh query, %d iterations, %d rows on average: p50 %.2f ms, p95 %.2f ms, p99 %.2f ms%n",
+						ITERATIONS, rows / ITERATIONS, percentiles[0], percentiles[1], percentiles[2]);
+
+		return percentiles;
+	}
+
+	private static int refresh(EntityConnection connection, UUID session) {
+		// The same condition and ordering as the chat table model, excluding the lazily loaded columns
+		return connection.select(where(and(Chat.SESSION.equalTo(session), Chat.DELETED.equalTo(false)))
+										.attributes(Chat.ID, Chat.SESSION, Chat.TIMESTAMP, Chat.NAME, Chat.MESSAGE_TYPE,
+														Chat.RESPONSE_TIME, Chat.INPUT_TOKENS, Chat.OUTPUT_TOKENS, Chat.TOTAL_TOKENS,
+														Chat.CACHED, Chat.DELETED)
+										.orderBy(descending(Chat.TIMESTAMP))
+										.build())
+						.size();
+	}
+
+	private String explain(Connection connection) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement("explain " + REFRESH)) {
+			statement.setObject(1, randomSession());
+			try (ResultSet resultSet = statement.executeQuery()) {
+				StringBuilder plan = new StringBuilder();
+				while (resultSet.next()) {
+					plan.append(resultSet.getString(1)).append(System.lineSeparator());
+				}
+				System.out.print(plan);
+
+				return plan.toString();
+			}
+		}
+	}
+
+	private UUID randomSession() {
+		return sessions.get(random.nextInt(sessions.size()));
+	}
+
+	private static double percentile(double[] sorted, int percentile) {
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100d * sorted.length) - 1)];
+	}
+
+	/**
+	 * @return the create index statements from create_schema.sql
+	 */
+	private static List<String> indexes() throws IOException {
+		try (InputStream script = ChatQueryBenchmark.class.getResourceAsStream("/create_schema.sql")) {
+			List<String> indexes = Arrays.stream(new String(script.readAllBytes(), UTF_8).split(";"))
+							// Strip the comment lines preceding the statements
+							.map(statement -> statement.lines()
+											.filter(line -> !line.strip().startsWith("--"))
+											.collect(joining("\n"))
+											.strip())
+							.filter(statement -> statement.startsWith("create index"))
+							.toList();
+			if (indexes.isEmpty()) {
+				throw new IllegalStateException("No indexes found in create_schema.sql");
+			}
+
+			return indexes;
+		}
+	}
+
+	private static String indexName(String createIndex) {
+		// create index <schema.name> on ...
+		return createIndex.split("\\s+")[2];
+	}
+}
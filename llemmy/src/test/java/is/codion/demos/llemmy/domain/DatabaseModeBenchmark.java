@@ -0,0 +1,230 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.domain;
+
+import is.codion.common.db.database.Database;
+import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.framework.db.EntityConnection;
+import is.codion.framework.db.EntityConnectionProvider;
+import is.codion.framework.db.local.LocalEntityConnectionProvider;
+import is.codion.framework.domain.entity.Entity;
+
+import dev.langchain4j.data.message.ChatMessageType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static is.codion.common.utilities.user.User.user;
+import static is.codion.framework.db.EntityConnection.Select.where;
+import static is.codion.framework.domain.entity.OrderBy.descending;
+import static is.codion.framework.domain.entity.condition.Condition.and;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares the in-memory and the file based database modes, see LlemmyApp, reporting the startup time,
+ * the time taken to write a session worth of chats and the steady-state heap usage, for an in-memory
+ * database, a new file based one and the same file based one reopened, along with its history.
+ * Each mode runs in its own JVM, with the heap size of the application.
+ * <p>
+ * Run with: gradlew llemmy:databaseModeBenchmark -Dllemmy.benchmark.chats=20000
+ */
+public final class DatabaseModeBenchmark {
+
+	// The number of chats written by each run
+	private static final int CHATS = Integer.getInteger("llemmy.benchmark.chats", 10_000);
+	// The heap size of each run, the same as the application
+	private static final String HEAP = System.getProperty("llemmy.benchmark.heap", "64m");
+	// The number of chats written in a single transaction, as by the chat writer
+	private static final int FLUSH_SIZE = 50;
+	// The settings used by LlemmyApp for the file based database
+	private static final int CACHE_SIZE = Integer.getInteger("llemmy.database.cacheSize", 8_192);
+	private static final int WRITE_DELAY = Integer.getInteger("llemmy.database.writeDelay", 1_000);
+	private static final String RESULT = "RESULT";
+
+	private DatabaseModeBenchmark() {}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 2) {
+			run(args[0], Path.of(args[1]));
+			return;
+		}
+		Path directory = Files.createTempDirectory("llemmy-benchmark");
+		try {
+			System.out.println("Writing " + CHATS + " chats per run, with a " + HEAP + " heap");
+			List<String> results = new ArrayList<>();
+			results.add(fork("memory", directory, "In-memory"));
+			results.add(fork("file", directory, "File, new"));
+			results.add(fork("file", directory, "File, reopened"));
+			System.out.println();
+			System.out.printf("%-16s %10s %10s %10s %10s%n", "Mode", "History", "Startup", "Write", "Heap");
+			results.forEach(System.out::println);
+		}
+		finally {
+			try (Stream<Path> files = Files.walk(directory)) {
+				files.sorted((path1, path2) -> path2.compareTo(path1))
+								.forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	/**
+	 * Runs the given mode in a new JVM
+	 * @return the formatted result
+	 */
+	private static String fork(String mode, Path directory, String caption) throws IOException, InterruptedException {
+		Process process = new ProcessBuilder(ProcessHandle.current().info().command().orElse("java"),
+						"-Xmx" + HEAP, "-Dllemmy.database.cacheSize=" + CACHE_SIZE, "-Dllemmy.database.writeDelay=" + WRITE_DELAY,
+						"-cp", System.getProperty("java.class.path"),
+						DatabaseModeBenchmark.class.getName(), mode, directory.toString())
+						.redirectErrorStream(true)
+						.start();
+		String[] result = null;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(RESULT)) {
+					result = line.split(" ");
+				}
+				else {
+					System.out.println(line);
+				}
+			}
+		}
+		if (process.waitFor() != 0 || result == null) {
+			throw new IllegalStateException(caption + " failed with exit code " + process.exitValue());
+		}
+
+		return String.format("%-16s %10s %7s ms %7s ms %7s MB", caption, result[1], result[2], result[3], result[4]);
+	}
+
+	private static void run(String mode, Path directory) throws Exception {
+		configure(mode, directory);
+		// Opening the database, creating or upgrading the schema,
+		// and displaying the newest page of the history
+		Database database = Database.instance();
+		EntityConnectionProvider connectionProvider = LocalEntityConnectionProvider.builder()
+						.database(database)
+						.domain(new Llemmy())
+						.user(user("sa"))
+						.build();
+		EntityConnection connection = connectionProvider.connection();
+		UUID session = UUID.randomUUID();
+		refresh(connection, session);
+		long startup = ManagementFactory.getRuntimeMXBean().getUptime();
+		int history = count(database);
+
+		long started = System.nanoTime();
+		write(connection, session);
+		long written = (System.nanoTime() - started) / 1_000_000;
+		refresh(connection, session);
+
+		System.gc();
+		Thread.sleep(500);
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		long heap = (runtime.totalMemory() - runtime.freeMemory()) / 1_048_576;
+		System.out.println(String.join(" ", RESULT, String.valueOf(history), String.valueOf(startup),
+						String.valueOf(written), String.valueOf(heap)));
+		connectionProvider.close();
+		if (mode.equals("file")) {
+			// As on application exit, see LlemmyApp
+			try (Connection jdbc = DriverManager.getConnection(database.url(), "sa", "");
+					 Statement statement = jdbc.createStatement()) {
+				statement.execute("shutdown");
+			}
+		}
+	}
+
+	/**
+	 * Configures the database as LlemmyApp does, for the given mode
+	 */
+	private static void configure(String mode, Path directory) {
+		if (mode.equals("memory")) {
+			Database.URL.set("jdbc:h2:mem:h2db");
+			Database.INIT_SCRIPTS.set("classpath:create_schema.sql");
+		}
+		else {
+			Path database = directory.resolve("llemmy").toAbsolutePath();
+			Database.URL.set("jdbc:h2:file:" + database +
+							";CACHE_SIZE=" + CACHE_SIZE +
+							";WRITE_DELAY=" + WRITE_DELAY +
+							";DB_CLOSE_ON_EXIT=FALSE");
+			Database.INIT_SCRIPTS.set(Files.exists(database.resolveSibling(database.getFileName() + ".mv.db")) ?
+							"classpath:upgrade_schema.sql" : "classpath:create_schema.sql");
+		}
+	}
+
+	private static void write(EntityConnection connection, UUID session) {
+		LocalDateTime timestamp = LocalDateTime.now();
+		List<Entity> chats = new ArrayList<>(FLUSH_SIZE);
+		for (int i = 0; i < CHATS; i++) {
+			boolean user = i % 2 == 0;
+			chats.add(connection.entities().entity(Chat.TYPE)
+							.with(Chat.SESSION, session)
+							.with(Chat.TIMESTAMP, timestamp.plusNanos(i * 1_000L))
+							.with(Chat.NAME, user ? "user" : "model")
+							.with(Chat.MESSAGE_TYPE, user ? ChatMessageType.USER : ChatMessageType.AI)
+							.with(Chat.MESSAGE, ("Synthetic message number " + i + " ").repeat(20))
+							.build());
+			if (chats.size() == FLUSH_SIZE || i == CHATS - 1) {
+				connection.startTransaction();
+				try {
+					connection.insert(chats);
+					connection.commitTransaction();
+				}
+				catch (RuntimeException e) {
+					connection.rollbackTransaction();
+					throw e;
+				}
+				chats.clear();
+			}
+		}
+	}
+
+	private static void refresh(EntityConnection connection, UUID session) {
+		// The newest page, as by the chat table model
+		connection.select(where(and(Chat.SESSION.equalTo(session), Chat.DELETED.equalTo(false)))
+						.orderBy(descending(Chat.TIMESTAMP, Chat.ID))
+						.limit(200)
+						.build());
+	}
+
+	private static int count(Database database) throws Exception {
+		try (Connection connection = DriverManager.getConnection(database.url(), "sa", "");
+				 Statement statement = connection.createStatement();
+				 ResultSet resultSet = statement.executeQuery("select count(*) from llemmy.chat")) {
+			resultSet.next();
+
+			return resultSet.getInt(1);
+		}
+	}
+}
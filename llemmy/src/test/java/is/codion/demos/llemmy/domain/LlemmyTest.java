@@ -18,7 +18,9 @@
  */
 package is.codion.demos.llemmy.domain;
 
+import is.codion.demos.llemmy.domain.Llemmy.Attachment;
 import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.demos.llemmy.domain.Llemmy.ChatAttachment;
 import is.codion.framework.db.EntityConnection;
 import is.codion.framework.domain.entity.attribute.Attribute;
 import is.codion.framework.domain.test.DefaultEntityFactory;
@@ -41,6 +43,16 @@ final class LlemmyTest extends DomainTest {
 		test(Chat.TYPE);
 	}
 
+	@Test
+	void attachment() {
+		test(Attachment.TYPE);
+	}
+
+	@Test
+	void chatAttachment() {
+		test(ChatAttachment.TYPE);
+	}
+
 	/**
 	 * We provide a {@link EntityFactory} since we use a few
 	 * column types for which the framework can not automatically
@@ -57,7 +69,7 @@ final class LlemmyTest extends DomainTest {
 			if (attribute.equals(Chat.MESSAGE_TYPE)) {
 				return (T) ChatMessageType.AI;
 			}
-			if (attribute.equals(Chat.JSON)) {
+			if (attribute.equals(Chat.JSON) || attribute.equals(Chat.PARENT_ID)) {
 				return null;
 			}
 			if (attribute.equals(Chat.RESPONSE_TIME)) {
@@ -0,0 +1,104 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import is.codion.demos.llemmy.model.EntityChatEditModel.MimeType;
+
+import dev.langchain4j.data.message.ImageContent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+final class AttachmentLoaderTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void encode() throws IOException {
+		AttachmentLoader loader = new AttachmentLoader();
+		// Sizes around the chunk boundary, with and without padding
+		for (int size : new int[] {1, 2, 3, 24_575, 24_576, 24_577, 100_000}) {
+			byte[] bytes = new byte[size];
+			new Random(size).nextBytes(bytes);
+			Path file = Files.write(directory.resolve("image" + size + ".png"), bytes);
+			AtomicInteger progress = new AtomicInteger();
+			MessageDigest digest = ResponseCache.sha256();
+			ImageContent content = (ImageContent) loader.load(file, MimeType.PNG, loader.validate(file, 0), digest, progress::set);
+			assertEquals(Base64.getEncoder().encodeToString(bytes), content.image().base64Data());
+			assertArrayEquals(ResponseCache.sha256().digest(bytes), digest.digest());
+			assertEquals(100, progress.get());
+		}
+	}
+
+	@Test
+	void maximumSize() throws IOException {
+		AttachmentLoader loader = new AttachmentLoader(1024, Long.MAX_VALUE);
+		Path file = Files.write(directory.resolve("large.pdf"), new byte[1025]);
+		assertThrows(IllegalArgumentException.class, () -> loader.validate(file, 0));
+	}
+
+	@Test
+	void maximumTotalSize() throws IOException {
+		AttachmentLoader loader = new AttachmentLoader(1024, 2048);
+		Path file = Files.write(directory.resolve("small.pdf"), new byte[1024]);
+		assertEquals(1024, loader.validate(file, 1024));
+		assertThrows(IllegalArgumentException.class, () -> loader.validate(file, 1025));
+	}
+
+	@Test
+	void sizeChanged() throws IOException {
+		Path file = Files.write(directory.resolve("modified.png"), new byte[1024]);
+		// Grown or shrunk since the size was validated
+		assertThrows(IOException.class, () -> AttachmentLoader.toBase64(file, 1023, ResponseCache.sha256(), progress -> {}));
+		assertThrows(IOException.class, () -> AttachmentLoader.toBase64(file, 1025, ResponseCache.sha256(), progress -> {}));
+		assertEquals(Base64.getEncoder().encodeToString(new byte[1024]),
+						AttachmentLoader.toBase64(file, 1024, ResponseCache.sha256(), progress -> {}));
+	}
+
+	@Test
+	void largerThanHeap() throws IOException {
+		AttachmentLoader loader = new AttachmentLoader(Long.MAX_VALUE, Long.MAX_VALUE);
+		Path file = directory.resolve("huge.pdf");
+		// A sparse file, larger than the maximum heap size
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+			randomAccessFile.setLength(Runtime.getRuntime().maxMemory() + 1);
+		}
+		long size = loader.validate(file, 0);
+		// Fails before anything is allocated, instead of an OutOfMemoryError
+		assertThrows(IllegalArgumentException.class, () -> loader.load(file, MimeType.PDF, size, ResponseCache.sha256(), progress -> {}));
+		assertThrows(IllegalArgumentException.class, () -> loader.load(file, MimeType.JPEG, size, ResponseCache.sha256(), progress -> {}));
+		// and the loader remains usable
+		Path small = Files.write(directory.resolve("small.png"), new byte[] {1, 2, 3});
+		ImageContent content = (ImageContent) loader.load(small, MimeType.PNG, loader.validate(small, 0), ResponseCache.sha256(), progress -> {});
+		assertEquals("AQID", content.image().base64Data());
+	}
+}
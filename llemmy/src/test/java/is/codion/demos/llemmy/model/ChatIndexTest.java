@@ -0,0 +1,97 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import is.codion.demos.llemmy.domain.Llemmy;
+import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.demos.llemmy.model.ChatIndex.Hit;
+import is.codion.demos.llemmy.model.ChatIndex.Snippet;
+import is.codion.demos.llemmy.model.ChatSearchModel.Highlight;
+import is.codion.framework.domain.entity.Entities;
+import is.codion.framework.domain.entity.Entity;
+
+import org.apache.lucene.search.Query;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class ChatIndexTest {
+
+	private final Entities entities = new Llemmy().entities();
+
+	@Test
+	void search() {
+		ChatIndex index = new ChatIndex(null);
+		index.add(List.of(
+						chat(1, "Configuring the Kafka consumer for the nightly batch import job"),
+						chat(2, "Kafka consumers and Kafka producers, Kafka everywhere"),
+						chat(3, "Nothing to see here")));
+		// Stemmed, all terms required, the more matches the better
+		assertEquals(List.of(2, 1), chatIds(index, "kafka consumers"));
+		assertEquals(List.of(1), chatIds(index, "kafka -producer"));
+		assertEquals(List.of(), chatIds(index, "kafka nothing"));
+		index.delete(List.of(chat(2, null)));
+		assertEquals(List.of(1), chatIds(index, "kafka"));
+		// Replaced when added again
+		index.add(List.of(chat(1, "Nothing about it")));
+		assertEquals(List.of(), chatIds(index, "kafka"));
+	}
+
+	@Test
+	void paging() {
+		ChatIndex index = new ChatIndex(null);
+		index.add(List.of(chat(1, "kafka"), chat(2, "kafka"), chat(3, "kafka")));
+		ChatIndex.Hits hits = index.search(index.query("kafka"), 2, 2);
+		assertEquals(3, hits.total());
+		assertTrue(hits.exact());
+		assertEquals(1, hits.hits().size());
+	}
+
+	@Test
+	void snippet() {
+		ChatIndex index = new ChatIndex(null);
+		Query query = index.query("kafka consumer");
+		String message = "x ".repeat(200) + "the Kafka\nconsumers" + " y".repeat(200);
+		Snippet snippet = index.snippet(query, message);
+		assertTrue(snippet.text().startsWith("..."));
+		assertTrue(snippet.text().endsWith("..."));
+		assertTrue(snippet.text().length() <= 206);
+		List<Highlight> highlights = snippet.highlights();
+		assertEquals(2, highlights.size());
+		assertEquals("Kafka", snippet.text().substring(highlights.get(0).start(), highlights.get(0).end()));
+		// Line breaks replaced
+		assertEquals("Kafka consumers", snippet.text().substring(highlights.get(0).start(), highlights.get(1).end()));
+	}
+
+	private static List<Integer> chatIds(ChatIndex index, String text) {
+		return index.search(index.query(text), 0, 10).hits().stream()
+						.map(Hit::chatId)
+						.toList();
+	}
+
+	private Entity chat(int id, String message) {
+		return entities.entity(Chat.TYPE)
+						.with(Chat.ID, id)
+						.with(Chat.MESSAGE, message)
+						.build();
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class CircuitBreakerTest {
+
+	@Test
+	void openAfterConsecutiveFailures() {
+		CircuitBreaker breaker = new CircuitBreaker(2, Duration.ofHours(1));
+		breaker.failure();
+		breaker.success();
+		breaker.failure();
+		assertTrue(breaker.allow());
+		breaker.failure();
+		assertTrue(breaker.open());
+		assertFalse(breaker.allow());
+	}
+
+	@Test
+	void trialCall() {
+		CircuitBreaker breaker = new CircuitBreaker(1, Duration.ZERO);
+		breaker.failure();
+		assertTrue(breaker.open());
+		// A single trial call once the open duration has elapsed
+		assertTrue(breaker.allow());
+		assertFalse(breaker.allow());
+		breaker.failure();
+		assertTrue(breaker.allow());
+		breaker.success();
+		assertFalse(breaker.open());
+		assertTrue(breaker.allow());
+		assertTrue(breaker.allow());
+	}
+
+	@Test
+	void releaseTrialCall() {
+		CircuitBreaker breaker = new CircuitBreaker(1, Duration.ZERO);
+		breaker.failure();
+		assertTrue(breaker.allow());
+		assertFalse(breaker.allow());
+		// The trial call cancelled, allowing another one
+		breaker.release();
+		assertTrue(breaker.open());
+		assertTrue(breaker.allow());
+		breaker.success();
+		assertFalse(breaker.open());
+	}
+
+	@Test
+	void releaseByAnotherThread() throws InterruptedException {
+		CircuitBreaker breaker = new CircuitBreaker(1, Duration.ZERO);
+		breaker.failure();
+		assertTrue(breaker.allow());
+		// Only the thread making the trial call releases it
+		Thread thread = Thread.ofVirtual().start(breaker::release);
+		thread.join();
+		assertFalse(breaker.allow());
+	}
+}
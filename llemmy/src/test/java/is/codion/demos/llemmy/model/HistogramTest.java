@@ -0,0 +1,122 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class HistogramTest {
+
+	// The bucket containing Long.MAX_VALUE
+	private static final int LAST = 247;
+
+	@Test
+	void exactBelowFour() {
+		for (int value = 0; value < 4; value++) {
+			assertEquals(value, Histogram.index(value));
+			assertEquals(value, Histogram.upperBound(value));
+		}
+	}
+
+	@Test
+	void bucketBoundaries() {
+		for (int index = 4; index <= LAST; index++) {
+			long upperBound = Histogram.upperBound(index);
+			// The upper bound is the largest value in the bucket
+			assertEquals(index, Histogram.index(upperBound));
+			assertEquals(index - 1, Histogram.index(Histogram.upperBound(index - 1)));
+			assertEquals(index, Histogram.index(Histogram.upperBound(index - 1) + 1));
+		}
+		assertEquals(LAST, Histogram.index(Long.MAX_VALUE));
+		assertEquals(Long.MAX_VALUE, Histogram.upperBound(LAST));
+	}
+
+	@Test
+	void fourBucketsPerPowerOfTwo() {
+		assertEquals(4, Histogram.upperBound(4));
+		assertEquals(7, Histogram.upperBound(7));
+		assertEquals(9, Histogram.upperBound(8));
+		assertEquals(15, Histogram.upperBound(11));
+		assertEquals(Histogram.index(1024) - 1, Histogram.index(1023));
+		assertEquals(Histogram.index(1024) + 4, Histogram.index(2048));
+	}
+
+	@Test
+	void accuracy() {
+		for (long value = 1; value > 0 && value < Long.MAX_VALUE / 2; value = value * 3 / 2 + 1) {
+			long upperBound = Histogram.upperBound(Histogram.index(value));
+			assertTrue(upperBound >= value);
+			// Within 25% of the value
+			assertTrue(upperBound - value <= value / 4, "value " + value + ", upper bound " + upperBound);
+		}
+	}
+
+	@Test
+	void percentiles() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.percentile(50));
+		for (int value = 1; value <= 100; value++) {
+			histogram.record(value);
+		}
+		// The lowest value, 1, is exact
+		assertEquals(1, histogram.percentile(0));
+		assertEquals(1, histogram.percentile(1));
+		// 50 is in the bucket 48-55
+		assertEquals(55, histogram.percentile(50));
+		// 99 and 100 are in the bucket 96-111
+		assertEquals(111, histogram.percentile(99));
+		assertEquals(111, histogram.percentile(100));
+	}
+
+	@Test
+	void negativeValues() {
+		Histogram histogram = new Histogram();
+		histogram.record(-10);
+		assertEquals(0, histogram.percentile(100));
+		histogram.record(10);
+		assertEquals(0, histogram.percentile(50));
+		assertEquals(11, histogram.percentile(100));
+	}
+
+	@Test
+	void concurrentRecording() throws InterruptedException {
+		Histogram histogram = new Histogram();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = Thread.ofVirtual().start(() -> {
+				for (int value = 1; value <= 1_000; value++) {
+					histogram.record(value);
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		// No increments lost, the distribution is the same as for a single thread
+		Histogram single = new Histogram();
+		for (int value = 1; value <= 1_000; value++) {
+			single.record(value);
+		}
+		for (int percentile = 0; percentile <= 100; percentile += 5) {
+			assertEquals(single.percentile(percentile), histogram.percentile(percentile));
+		}
+	}
+}
@@ -0,0 +1,348 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import is.codion.common.db.database.Database;
+import is.codion.demos.llemmy.domain.Llemmy;
+import is.codion.demos.llemmy.domain.Llemmy.Chat;
+import is.codion.demos.llemmy.model.ChatMetrics.Percentiles;
+import is.codion.demos.llemmy.model.ChatMetrics.Snapshot;
+import is.codion.framework.db.EntityConnectionProvider;
+import is.codion.framework.db.local.LocalEntityConnectionProvider;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessageType;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static is.codion.common.utilities.user.User.user;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static javax.swing.SwingUtilities.invokeAndWait;
+import static javax.swing.SwingUtilities.invokeLater;
+
+/**
+ * A headless load test, running a number of chat sessions, each with its own {@link EntityChatEditModel},
+ * against a single H2 database, prompting a simulated chat model at a target rate.
+ * Reports the throughput, the latency from sending a prompt until the response has been written,
+ * the database contention, the Event Dispatch Thread lag and the heap usage.
+ * <p>
+ * The sessions share the connection provider, the request executor, the caches and the Event Dispatch Thread,
+ * as they would within a single backend. The chat writer of each session runs its transactions on its own connection.
+ * <p>
+ * Run with: gradlew llemmy:loadTest -Dllemmy.loadtest.sessions=100 -Dllemmy.loadtest.rate=50
+ */
+public final class LoadTest {
+
+	// The number of chat sessions
+	private static final int SESSIONS = Integer.getInteger("llemmy.loadtest.sessions", 10);
+	// The number of prompts sent per second, in total, round-robin over the sessions
+	private static final double RATE = Double.parseDouble(System.getProperty("llemmy.loadtest.rate", "10"));
+	// The number of seconds to run before measuring
+	private static final int WARMUP = Integer.getInteger("llemmy.loadtest.warmup", 10);
+	// The number of seconds to measure
+	private static final int DURATION = Integer.getInteger("llemmy.loadtest.duration", 60);
+	// The median latency of the simulated model in ms, before generating the output
+	private static final int LATENCY = Integer.getInteger("llemmy.loadtest.latency", 500);
+	// The median number of output tokens generated by the simulated model
+	private static final int TOKENS = Integer.getInteger("llemmy.loadtest.tokens", 300);
+	// The output tokens generated per second by the simulated model, zero for instant
+	private static final int TOKENS_PER_SECOND = Integer.getInteger("llemmy.loadtest.tokensPerSecond", 100);
+	// The spread of the latency and token distributions, the sigma of the log-normal distribution
+	private static final double SPREAD = Double.parseDouble(System.getProperty("llemmy.loadtest.spread", "0.5"));
+
+	// The maximum time to wait for the responses in progress once sending stops
+	private static final long DRAIN_TIMEOUT = 120_000;
+	private static final long SAMPLE_INTERVAL = 100;
+
+	private final List<Session> sessions = new ArrayList<>(SESSIONS);
+	private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+	private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+	private final AtomicLong sent = new AtomicLong();
+
+	// The following are only accessed on the Event Dispatch Thread
+	private final List<Long> latencies = new ArrayList<>();
+	private long completed;
+	private long errors;
+	private long pending;
+
+	// The following are only accessed by the sampler
+	private final List<Long> dispatchLags = new ArrayList<>();
+	private long blockedSamples;
+	private long blockedMaximum;
+	private long samples;
+	private long heapMaximum;
+
+	private volatile long measureStarted = Long.MAX_VALUE;
+	private volatile long measureEnded = Long.MAX_VALUE;
+
+	private LoadTest() {}
+
+	public static void main(String[] args) throws Exception {
+		Database database = Database.instance();
+		EntityConnectionProvider connectionProvider = LocalEntityConnectionProvider.builder()
+						.database(database)
+						.domain(new Llemmy())
+						.user(user("sa"))
+						.build();
+		try (Connection connection = DriverManager.getConnection(database.url(), "sa", "")) {
+			new LoadTest().run(connectionProvider, connection);
+		}
+		finally {
+			connectionProvider.close();
+		}
+		// Stops the shared executors
+		System.exit(0);
+	}
+
+	private void run(EntityConnectionProvider connectionProvider, Connection connection) throws Exception {
+		System.out.printf("%d sessions, %.1f prompts per second, model latency %d ms, %d tokens at %d per second%n",
+						SESSIONS, RATE, LATENCY, TOKENS, TOKENS_PER_SECOND);
+		ChatModel chatModel = new SimulatedChatModel();
+		invokeAndWait(() -> {
+			for (int i = 0; i < SESSIONS; i++) {
+				sessions.add(new Session(new EntityChatEditModel(List.of(chatModel), model -> null, connectionProvider)));
+			}
+		});
+		long heapBefore = heapAfterGC();
+		List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+		long gcCount = collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+		long gcTime = collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+
+		AtomicLong next = new AtomicLong();
+		scheduler.scheduleAtFixedRate(() -> send(sessions.get((int) (next.getAndIncrement() % SESSIONS))),
+						0, (long) (1_000_000 / RATE), MICROSECONDS);
+		scheduler.scheduleAtFixedRate(() -> sample(connection), 0, SAMPLE_INTERVAL, MILLISECONDS);
+
+		Thread.sleep(WARMUP * 1_000L);
+		System.out.println("Warmed up, measuring for " + DURATION + " s");
+		measureStarted = System.nanoTime();
+		Thread.sleep(DURATION * 1_000L);
+		measureEnded = System.nanoTime();
+		scheduler.shutdown();
+		scheduler.awaitTermination(10, SECONDS);
+		drain();
+
+		gcCount = collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum() - gcCount;
+		gcTime = collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum() - gcTime;
+		invokeAndWait(() -> report(heapBefore, heapAfterGC(), gcCount, gcTime));
+		// Writes the queued chats and stops the chat writers
+		sessions.forEach(session -> session.model.close());
+	}
+
+	/**
+	 * Sends a prompt from the given session, which is queued in case the session is busy.
+	 * @param session the session
+	 */
+	private void send(Session session) {
+		long started = System.nanoTime();
+		invokeLater(() -> {
+			try {
+				session.sent.add(started);
+				pending++;
+				session.model.prompt().set("Prompt number " + sent.incrementAndGet() + " from session " + session.model.session());
+				session.model.send();
+			}
+			catch (Exception e) {
+				session.sent.removeLast();
+				pending--;
+				errors++;
+				e.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * Called on the Event Dispatch Thread for each chat written, or failed to be.
+	 * @param session the session
+	 * @param chat the chat
+	 */
+	private void written(Session session, EntityChatEditModel.WrittenChat chat) {
+		ChatMessageType messageType = chat.queued().get(Chat.MESSAGE_TYPE);
+		if (messageType != ChatMessageType.USER) {
+			long now = System.nanoTime();
+			long started = session.sent.removeFirst();
+			pending--;
+			if (messageType == ChatMessageType.SYSTEM || chat.inserted() == null) {
+				errors++;
+			}
+			else if (started >= measureStarted && started < measureEnded) {
+				latencies.add(now - started);
+			}
+			if (now >= measureStarted && now < measureEnded) {
+				completed++;
+			}
+		}
+	}
+
+	private void sample(Connection connection) {
+		long posted = System.nanoTime();
+		invokeLater(() -> {
+			synchronized (dispatchLags) {
+				dispatchLags.add(System.nanoTime() - posted);
+			}
+		});
+		heapMaximum = Math.max(heapMaximum, memory.getHeapMemoryUsage().getUsed());
+		try (Statement statement = connection.createStatement();
+				 ResultSet resultSet = statement.executeQuery("select count(*) from information_schema.sessions where blocker_id is not null")) {
+			resultSet.next();
+			long blocked = resultSet.getLong(1);
+			blockedSamples += blocked > 0 ? 1 : 0;
+			blockedMaximum = Math.max(blockedMaximum, blocked);
+			samples++;
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void drain() throws Exception {
+		long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+		long[] remaining = {1};
+		while (remaining[0] > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(SAMPLE_INTERVAL);
+			invokeAndWait(() -> remaining[0] = pending);
+		}
+		if (remaining[0] > 0) {
+			System.out.println(remaining[0] + " responses still in progress after " + DRAIN_TIMEOUT / 1_000 + " s");
+		}
+	}
+
+	private void report(long heapBefore, long heapAfter, long gcCount, long gcTime) {
+		ChatMetrics metrics = sessions.getFirst().model.metrics();
+		System.out.println();
+		System.out.printf("Sent %d, completed %d during the measurement, %d errors%n", sent.get(), completed, errors);
+		System.out.printf("Throughput: %.1f responses per second, target %.1f%n", completed / (double) DURATION, RATE);
+		long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+		System.out.printf("Latency, send to response written: p50 %d ms, p95 %d ms, p99 %d ms, max %d ms%n",
+						millis(sorted, 50), millis(sorted, 95), millis(sorted, 99), millis(sorted, 100));
+		System.out.println("Queue wait: " + percentiles(metrics.queueWait()));
+		for (Snapshot model : metrics.models()) {
+			System.out.printf("Model %s: %d calls, %d errors, latency %s%n",
+							model.model(), model.requests(), model.errors(), percentiles(model.latency()));
+		}
+		System.out.println("Chat batch insert: " + percentiles(metrics.insertTime()));
+		System.out.printf("Blocked database sessions: %.1f%% of samples, maximum %d%n",
+						100d * blockedSamples / Math.max(samples, 1), blockedMaximum);
+		long[] lags;
+		synchronized (dispatchLags) {
+			lags = dispatchLags.stream().mapToLong(Long::longValue).sorted().toArray();
+		}
+		System.out.printf("Event Dispatch Thread lag: p50 %d ms, p99 %d ms, max %d ms%n",
+						millis(lags, 50), millis(lags, 99), millis(lags, 100));
+		System.out.printf("Heap: %d MB before, %d MB after (after GC), peak %d MB used, %d collections taking %d ms%n",
+						heapBefore / 1_048_576, heapAfter / 1_048_576, heapMaximum / 1_048_576, gcCount, gcTime);
+	}
+
+	private long heapAfterGC() {
+		System.gc();
+
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+
+	private static String percentiles(Percentiles percentiles) {
+		return String.format("p50 %d ms, p95 %d ms, p99 %d ms",
+						percentiles.p50().toMillis(), percentiles.p95().toMillis(), percentiles.p99().toMillis());
+	}
+
+	private static long millis(long[] sorted, int percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100d * sorted.length) - 1)] / 1_000_000;
+	}
+
+	private final class Session {
+
+		private final EntityChatEditModel model;
+		// The time each prompt in progress was sent, oldest first
+		private final Deque<Long> sent = new ArrayDeque<>();
+
+		private Session(EntityChatEditModel model) {
+			this.model = model;
+			// Every prompt is unique, but just in case
+			model.bypassCache().set(true);
+			model.written().addConsumer(chat -> LoadTest.this.written(this, chat));
+		}
+	}
+
+	/**
+	 * A chat model simulating the latency and the output of a real one, with log-normally distributed
+	 * latency and output tokens, generated at a fixed rate.
+	 */
+	private static final class SimulatedChatModel implements ChatModel {
+
+		private static final String WORDS = "lorem ipsum dolor sit amet consectetur adipiscing elit ";
+
+		@Override
+		public ChatResponse doChat(ChatRequest chatRequest) {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			int outputTokens = Math.max(1, (int) logNormal(random, TOKENS));
+			if (chatRequest.maxOutputTokens() != null) {
+				outputTokens = Math.min(outputTokens, chatRequest.maxOutputTokens());
+			}
+			long latency = (long) logNormal(random, LATENCY);
+			if (TOKENS_PER_SECOND > 0) {
+				latency += outputTokens * 1_000L / TOKENS_PER_SECOND;
+			}
+			try {
+				Thread.sleep(latency);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+			int inputTokens = RateLimiter.estimate(chatRequest.messages());
+
+			return ChatResponse.builder()
+							.aiMessage(AiMessage.from(text(outputTokens * ConversationMemory.CHARACTERS_PER_TOKEN)))
+							.tokenUsage(new TokenUsage(inputTokens, outputTokens))
+							.build();
+		}
+
+		private static double logNormal(ThreadLocalRandom random, double median) {
+			return median * Math.exp(SPREAD * random.nextGaussian());
+		}
+
+		private static String text(int length) {
+			return WORDS.repeat(length / WORDS.length() + 1).substring(0, length);
+		}
+	}
+}
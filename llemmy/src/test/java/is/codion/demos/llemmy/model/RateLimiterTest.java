@@ -0,0 +1,103 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demos.llemmy.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class RateLimiterTest {
+
+	@Test
+	void unlimited() {
+		RateLimiter rateLimiter = new RateLimiter(0, 0);
+		assertFalse(rateLimiter.limited());
+		assertEquals(OptionalInt.empty(), rateLimiter.maxOutputTokens(100));
+		for (int i = 0; i < 1_000; i++) {
+			assertEquals(Duration.ZERO, rateLimiter.reserve(1_000_000).remaining());
+		}
+	}
+
+	@Test
+	void requestsPerMinute() {
+		RateLimiter rateLimiter = new RateLimiter(2, 0);
+		assertEquals(Duration.ZERO, rateLimiter.reserve(0).remaining());
+		assertEquals(Duration.ZERO, rateLimiter.reserve(0).remaining());
+		// One request is refilled every 30 seconds
+		Duration wait = rateLimiter.reserve(0).remaining();
+		assertTrue(wait.compareTo(Duration.ofSeconds(29)) > 0 && wait.compareTo(Duration.ofSeconds(30)) <= 0);
+	}
+
+	@Test
+	void tokensPerMinute() {
+		RateLimiter rateLimiter = new RateLimiter(0, 1_000);
+		assertEquals(OptionalInt.of(900), rateLimiter.maxOutputTokens(100));
+		assertEquals(OptionalInt.of(1), rateLimiter.maxOutputTokens(2_000));
+		assertEquals(Duration.ZERO, rateLimiter.reserve(1_000).remaining());
+		assertTrue(rateLimiter.reserve(500).remaining().compareTo(Duration.ofSeconds(29)) > 0);
+		// Returning the unused tokens
+		rateLimiter.reconcile(1_500, 0);
+		assertEquals(Duration.ZERO, rateLimiter.reserve(500).remaining());
+	}
+
+	@Test
+	void returnedTokens() {
+		RateLimiter rateLimiter = new RateLimiter(0, 1_000);
+		assertEquals(Duration.ZERO, rateLimiter.reserve(800).remaining());
+		RateLimiter.Reservation waiting = rateLimiter.reserve(400);
+		assertTrue(waiting.remaining().compareTo(Duration.ofSeconds(11)) > 0);
+		CompletableFuture<?> returned = rateLimiter.returned();
+		assertFalse(returned.isDone());
+		// The first request used only half of its reservation
+		rateLimiter.reconcile(800, 400);
+		assertTrue(returned.isDone());
+		assertEquals(Duration.ZERO, waiting.remaining());
+		// Charged for the tokens used above the reservation
+		RateLimiter.Reservation next = rateLimiter.reserve(200);
+		rateLimiter.reconcile(400, 800);
+		// Waiting for the 400 tokens overdrawn
+		assertTrue(next.remaining().compareTo(Duration.ofSeconds(23)) > 0);
+	}
+
+	@Test
+	void released() {
+		RateLimiter rateLimiter = new RateLimiter(1, 1_000);
+		assertEquals(Duration.ZERO, rateLimiter.reserve(1_000).remaining());
+		RateLimiter.Reservation waiting = rateLimiter.reserve(500);
+		assertTrue(waiting.remaining().compareTo(Duration.ofSeconds(59)) > 0);
+		CompletableFuture<?> returned = rateLimiter.returned();
+		// The first request was cancelled before being submitted
+		rateLimiter.release(1_000);
+		assertTrue(returned.isDone());
+		assertEquals(Duration.ZERO, waiting.remaining());
+	}
+
+	@Test
+	void seeded() {
+		RateLimiter rateLimiter = new RateLimiter(10, 0);
+		rateLimiter.consume(10, 0);
+		assertTrue(rateLimiter.reserve(0).remaining().isPositive());
+	}
+}
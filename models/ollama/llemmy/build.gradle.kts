@@ -32,6 +32,18 @@ application {
     )
 }
 
+// Pass on the Llemmy settings when running, such as -Dllemmy.database.directory=...
+tasks.named<JavaExec>("run") {
+    System.getProperties().stringPropertyNames()
+        .filter { it.startsWith("llemmy.") }
+        .forEach { systemProperty(it, System.getProperty(it)) }
+    // Record the Llemmy events to the given file, such as -Dllemmy.jfr=llemmy.jfr
+    System.getProperty("llemmy.jfr")?.let {
+        val settings = rootProject.file("llemmy/src/main/jfr/llemmy.jfc")
+        jvmArgs("-XX:StartFlightRecording:settings=default,settings=$settings,filename=${file(it)},dumponexit=true")
+    }
+}
+
 // Configure the Jlink plugin
 jlink {
     // Specify the jlink image name
@@ -60,6 +72,7 @@ jlink {
         requires("java.sql")
         requires("com.fasterxml.jackson.databind")
         uses("dev.langchain4j.model.ollama.spi.OllamaChatModelBuilderFactory")
+        uses("dev.langchain4j.model.ollama.spi.OllamaStreamingChatModelBuilderFactory")
         uses("dev.langchain4j.http.client.HttpClientBuilderFactory")
         uses("dev.langchain4j.spi.data.message.ChatMessageJsonCodecFactory")
         provides("dev.langchain4j.http.client.HttpClientBuilderFactory")
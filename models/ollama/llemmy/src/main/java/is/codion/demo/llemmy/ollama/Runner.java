@@ -23,6 +23,7 @@ import is.codion.demos.llemmy.LlemmyApp;
 import is.codion.swing.common.ui.dialog.Dialogs;
 
 import dev.langchain4j.model.ollama.OllamaChatModel;
+import dev.langchain4j.model.ollama.OllamaStreamingChatModel;
 
 import java.util.List;
 
@@ -30,6 +31,8 @@ import java.util.List;
 public final class Runner {
 
 	public static final int PORT = 11434;
+	// Override with -Dllemmy.ollama.baseUrl=..., such as for the stub server
+	public static final String BASE_URL = System.getProperty("llemmy.ollama.baseUrl", "http://localhost:" + PORT);
 	public static final String ORCA_MINI = "orca-mini";
 	public static final List<String> MODELS = List.of(
 					ORCA_MINI,
@@ -45,14 +48,19 @@ public final class Runner {
 
 	public static void main(String[] args) {
 		LlemmyApp.start(() -> List.of(OllamaChatModel.builder()
-						.baseUrl("http://localhost:" + PORT)
-						.modelName(Dialogs.select()
-										.comboBox(MODELS)
-										.defaultSelection(ORCA_MINI)
-										.title("Select model")
-										.select()
-										.orElseThrow(CancelException::new))
-						.build()));
+										.baseUrl(BASE_URL)
+										.modelName(Dialogs.select()
+														.comboBox(MODELS)
+														.defaultSelection(ORCA_MINI)
+														.title("Select model")
+														.select()
+														.orElseThrow(CancelException::new))
+										.build()),
+						// Stream the responses using the same model
+						chatModel -> OllamaStreamingChatModel.builder()
+										.baseUrl(BASE_URL)
+										.modelName(chatModel.defaultRequestParameters().modelName())
+										.build());
 	}
 }
 // end::runner[]
\ No newline at end of file
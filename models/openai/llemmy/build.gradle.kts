@@ -32,6 +32,18 @@ application {
     )
 }
 
+// Pass on the Llemmy settings when running, such as -Dllemmy.database.directory=...
+tasks.named<JavaExec>("run") {
+    System.getProperties().stringPropertyNames()
+        .filter { it.startsWith("llemmy.") }
+        .forEach { systemProperty(it, System.getProperty(it)) }
+    // Record the Llemmy events to the given file, such as -Dllemmy.jfr=llemmy.jfr
+    System.getProperty("llemmy.jfr")?.let {
+        val settings = rootProject.file("llemmy/src/main/jfr/llemmy.jfc")
+        jvmArgs("-XX:StartFlightRecording:settings=default,settings=$settings,filename=${file(it)},dumponexit=true")
+    }
+}
+
 // Configure the Jlink plugin
 jlink {
     // Specify the jlink image name
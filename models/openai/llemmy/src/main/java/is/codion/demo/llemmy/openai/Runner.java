@@ -44,6 +44,8 @@ public final class Runner {
 
 	public static void main(String[] args) {
 		LlemmyApp.start(() -> List.of(OpenAiChatModel.builder()
+						// The default OpenAI url unless specified, such as for the stub server
+						.baseUrl(System.getProperty("llemmy.openai.baseUrl"))
 						.apiKey(Dialogs.input()
 										.component(stringField()
 														.columns(25))
@@ -0,0 +1,40 @@
+plugins {
+    id("application")
+}
+
+dependencies {
+    implementation(libs.jackson.databind)
+
+    // The real client stacks, run against the stub server in the tests
+    testImplementation(libs.langchain4j.ollama)
+    testImplementation(libs.langchain4j.open.ai)
+    testImplementation(libs.langchain4j.http.client.jdk)
+}
+
+testing {
+    suites {
+        val test by getting(JvmTestSuite::class) {
+            useJUnitJupiter()
+        }
+    }
+}
+
+// The langchain4j clients are not modular, so the tests run on the classpath
+tasks.compileTestJava {
+    modularity.inferModulePath = false
+}
+tasks.test {
+    modularity.inferModulePath = false
+}
+
+application {
+    mainModule = "is.codion.demo.llemmy.stub"
+    mainClass = "is.codion.demo.llemmy.stub.Runner"
+}
+
+// Pass on the stub settings when running, such as -Dllemmy.stub.latency=500
+tasks.named<JavaExec>("run") {
+    System.getProperties().stringPropertyNames()
+        .filter { it.startsWith("llemmy.stub.") }
+        .forEach { systemProperty(it, System.getProperty(it)) }
+}
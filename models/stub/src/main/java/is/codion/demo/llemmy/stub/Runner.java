@@ -0,0 +1,66 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demo.llemmy.stub;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Runs the stub server, by default on the Ollama port, so that the Llemmy Ollama runner can be used as is.
+ * <pre>
+ * gradlew stub-model:run -Dllemmy.stub.latency=500 -Dllemmy.stub.tokensPerSecond=50
+ * gradlew llemmy-ollama:run
+ * gradlew llemmy-openai:run -Dllemmy.openai.baseUrl=http://localhost:11434/v1
+ * </pre>
+ */
+public final class Runner {
+
+	// The port, the Ollama port by default
+	private static final int PORT = Integer.getInteger("llemmy.stub.port", 11434);
+	// The time before responding, or before the first token when streaming, in ms
+	private static final int LATENCY = Integer.getInteger("llemmy.stub.latency", 200);
+	// The output tokens per second, zero for all at once
+	private static final int TOKENS_PER_SECOND = Integer.getInteger("llemmy.stub.tokensPerSecond", 50);
+	// The number of tokens in each response
+	private static final int TOKENS = Integer.getInteger("llemmy.stub.tokens", 100);
+	// The fraction of prompts failing
+	private static final double ERROR_RATE = Double.parseDouble(System.getProperty("llemmy.stub.errorRate", "0"));
+	// The HTTP status of the failures
+	private static final int ERROR_STATUS = Integer.getInteger("llemmy.stub.errorStatus", 503);
+
+	private Runner() {}
+
+	public static void main(String[] args) throws IOException {
+		StubServer server = StubServer.builder()
+						.port(PORT)
+						.latency(Duration.ofMillis(LATENCY))
+						.tokensPerSecond(TOKENS_PER_SECOND)
+						.tokens(TOKENS)
+						.errorRate(ERROR_RATE)
+						.errorStatus(ERROR_STATUS)
+						.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.close();
+			System.out.println("Served " + server.requests() + " requests");
+		}));
+		System.out.println("Ollama: " + server.ollamaUrl());
+		System.out.println("OpenAI: " + server.openAiUrl());
+		System.out.println("Press Ctrl-C to stop");
+	}
+}
@@ -0,0 +1,620 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demo.llemmy.stub;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor;
+
+/**
+ * An in-process HTTP server speaking the Ollama /api/chat and the OpenAI /v1/chat/completions protocols,
+ * including streaming, for testing the real client stacks end-to-end without a model.
+ * The replies are scripted, including the latency, the token rate, errors and the response text.
+ * Both protocols are served on the same port.
+ * <pre>
+ * try (StubServer server = StubServer.builder()
+ *         .latency(Duration.ofMillis(200))
+ *         .tokensPerSecond(50)
+ *         .start()) {
+ *   ChatModel chatModel = OllamaChatModel.builder()
+ *           .baseUrl(server.ollamaUrl())
+ *           .modelName("stub")
+ *           .build();
+ *   ...
+ * }
+ * </pre>
+ * @see Builder#script(Script)
+ */
+public final class StubServer implements AutoCloseable {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	// A rough estimate, as used by Llemmy
+	private static final int CHARACTERS_PER_TOKEN = 4;
+
+	/**
+	 * The supported protocols
+	 */
+	public enum Protocol {
+		OLLAMA, OPEN_AI
+	}
+
+	private final Script script;
+	private final AtomicLong requests = new AtomicLong();
+	private final ExecutorService executor = newVirtualThreadPerTaskExecutor();
+	private final HttpServer server;
+
+	private StubServer(Builder builder) throws IOException {
+		this.script = builder.script == null ? new DefaultScript(builder) : builder.script;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.port), 0);
+		this.server.setExecutor(executor);
+		this.server.createContext("/api/chat", exchange -> handle(exchange, Protocol.OLLAMA));
+		this.server.createContext("/v1/chat/completions", exchange -> handle(exchange, Protocol.OPEN_AI));
+		this.server.start();
+	}
+
+	/**
+	 * @return a new {@link Builder} instance
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return the port the server is listening on
+	 */
+	public int port() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * @return the base url for the Ollama client
+	 */
+	public String ollamaUrl() {
+		return "http://localhost:" + port();
+	}
+
+	/**
+	 * @return the base url for the OpenAI client
+	 */
+	public String openAiUrl() {
+		return ollamaUrl() + "/v1";
+	}
+
+	/**
+	 * @return the number of chat requests received
+	 */
+	public long requests() {
+		return requests.get();
+	}
+
+	/**
+	 * Stops the server, aborting any replies in progress
+	 */
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Decides the reply to each prompt, called concurrently.
+	 */
+	public interface Script {
+
+		/**
+		 * @param prompt the prompt
+		 * @return the reply
+		 */
+		Reply reply(Prompt prompt);
+	}
+
+	/**
+	 * A prompt received by the server
+	 * @param protocol the protocol
+	 * @param number the request number, starting with one
+	 * @param model the model name
+	 * @param text the text of the last user message
+	 * @param inputTokens the estimated number of input tokens, based on the text of all the messages
+	 * @param maximumTokens the maximum number of output tokens requested, zero if none
+	 * @param stream true if a streamed response was requested
+	 */
+	public record Prompt(Protocol protocol, long number, String model, String text,
+											 int inputTokens, int maximumTokens, boolean stream) {}
+
+	/**
+	 * A scripted reply
+	 * @param status the HTTP status, an error unless 200
+	 * @param text the response text, or the error message
+	 * @param latency the time before responding, or before the first token when streaming
+	 * @param tokensPerSecond the output tokens per second, zero for all at once
+	 */
+	public record Reply(int status, String text, Duration latency, int tokensPerSecond) {
+
+		public Reply {
+			requireNonNull(text);
+			requireNonNull(latency);
+		}
+
+		/**
+		 * @param text the response text
+		 * @return a reply with the given text, without delay
+		 */
+		public static Reply text(String text) {
+			return new Reply(200, text, Duration.ZERO, 0);
+		}
+
+		/**
+		 * @param status the HTTP status, such as 429 or 503
+		 * @param message the error message
+		 * @return an error reply
+		 */
+		public static Reply error(int status, String message) {
+			return new Reply(status, message, Duration.ZERO, 0);
+		}
+
+		/**
+		 * @param latency the latency
+		 * @return a copy of this reply with the given latency
+		 */
+		public Reply latency(Duration latency) {
+			return new Reply(status, text, latency, tokensPerSecond);
+		}
+
+		/**
+		 * @param tokensPerSecond the output tokens per second, zero for all at once
+		 * @return a copy of this reply with the given token rate
+		 */
+		public Reply tokensPerSecond(int tokensPerSecond) {
+			return new Reply(status, text, latency, tokensPerSecond);
+		}
+	}
+
+	/**
+	 * Builds and starts a {@link StubServer}
+	 */
+	public static final class Builder {
+
+		private int port = 0;
+		private Duration latency = Duration.ZERO;
+		private int tokensPerSecond = 0;
+		private int tokens = 100;
+		private Function<Prompt, String> response;
+		private double errorRate = 0;
+		private int errorStatus = 503;
+		private long seed = 42;
+		private Script script;
+
+		private Builder() {}
+
+		/**
+		 * @param port the port, zero for any available port
+		 * @return this builder
+		 */
+		public Builder port(int port) {
+			this.port = port;
+			return this;
+		}
+
+		/**
+		 * @param latency the time before responding, or before the first token when streaming
+		 * @return this builder
+		 */
+		public Builder latency(Duration latency) {
+			this.latency = requireNonNull(latency);
+			return this;
+		}
+
+		/**
+		 * @param tokensPerSecond the output tokens per second, zero for all at once
+		 * @return this builder
+		 */
+		public Builder tokensPerSecond(int tokensPerSecond) {
+			this.tokensPerSecond = tokensPerSecond;
+			return this;
+		}
+
+		/**
+		 * @param tokens the number of tokens in the generated response text
+		 * @return this builder
+		 * @see #response(Function)
+		 */
+		public Builder tokens(int tokens) {
+			this.tokens = tokens;
+			return this;
+		}
+
+		/**
+		 * @param response provides the response text for a prompt, instead of the generated one
+		 * @return this builder
+		 */
+		public Builder response(Function<Prompt, String> response) {
+			this.response = requireNonNull(response);
+			return this;
+		}
+
+		/**
+		 * @param errorRate the fraction of prompts failing, between 0 and 1
+		 * @return this builder
+		 */
+		public Builder errorRate(double errorRate) {
+			if (errorRate < 0 || errorRate > 1) {
+				throw new IllegalArgumentException("Error rate must be between 0 and 1");
+			}
+			this.errorRate = errorRate;
+			return this;
+		}
+
+		/**
+		 * @param errorStatus the HTTP status of the injected errors, 503 by default
+		 * @return this builder
+		 */
+		public Builder errorStatus(int errorStatus) {
+			this.errorStatus = errorStatus;
+			return this;
+		}
+
+		/**
+		 * @param seed the seed deciding which prompts fail, for repeatable runs
+		 * @return this builder
+		 */
+		public Builder seed(long seed) {
+			this.seed = seed;
+			return this;
+		}
+
+		/**
+		 * Replaces the script based on the settings of this builder
+		 * @param script the script deciding the reply to each prompt
+		 * @return this builder
+		 */
+		public Builder script(Script script) {
+			this.script = requireNonNull(script);
+			return this;
+		}
+
+		/**
+		 * @return a new started {@link StubServer}
+		 * @throws IOException in case the server could not be started, such as when the port is in use
+		 */
+		public StubServer start() throws IOException {
+			return new StubServer(this);
+		}
+	}
+
+	private void handle(HttpExchange exchange, Protocol protocol) throws IOException {
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			JsonNode request = request(exchange);
+			if (request == null) {
+				error(exchange, protocol, Reply.error(400, "Malformed request, a JSON object is expected"));
+				return;
+			}
+			Prompt prompt = prompt(protocol, request, requests.incrementAndGet());
+			Reply reply = script.reply(prompt);
+			Thread.sleep(reply.latency());
+			if (reply.status() != 200) {
+				error(exchange, protocol, reply);
+			}
+			else if (prompt.stream()) {
+				stream(exchange, prompt, reply, request.path("stream_options").path("include_usage").asBoolean());
+			}
+			else {
+				respond(exchange, prompt, reply);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * @return the request, null in case it is not a JSON object
+	 */
+	private static JsonNode request(HttpExchange exchange) throws IOException {
+		try {
+			JsonNode request = MAPPER.readTree(exchange.getRequestBody());
+
+			return request != null && request.isObject() ? request : null;
+		}
+		catch (JsonProcessingException e) {
+			return null;
+		}
+	}
+
+	private static Prompt prompt(Protocol protocol, JsonNode request, long number) {
+		String text = "";
+		int characters = 0;
+		for (JsonNode message : request.path("messages")) {
+			String content = text(message.path("content"));
+			characters += content.length();
+			if ("user".equals(message.path("role").asText())) {
+				text = content;
+			}
+		}
+		int maximumTokens = protocol == Protocol.OLLAMA ?
+						request.path("options").path("num_predict").asInt() :
+						request.path("max_completion_tokens").asInt(request.path("max_tokens").asInt());
+
+		return new Prompt(protocol, number, request.path("model").asText(), text, characters / CHARACTERS_PER_TOKEN,
+						Math.max(maximumTokens, 0),
+						// Ollama streams unless told otherwise
+						request.path("stream").asBoolean(protocol == Protocol.OLLAMA));
+	}
+
+	/**
+	 * @param content either a string or an array of content parts
+	 * @return the text content
+	 */
+	private static String text(JsonNode content) {
+		if (content.isArray()) {
+			StringBuilder builder = new StringBuilder();
+			content.forEach(part -> builder.append(part.path("text").asText()));
+
+			return builder.toString();
+		}
+
+		return content.asText();
+	}
+
+	private void respond(HttpExchange exchange, Prompt prompt, Reply reply) throws IOException, InterruptedException {
+		Tokens tokens = tokens(reply.text(), prompt.maximumTokens());
+		if (reply.tokensPerSecond() > 0) {
+			Thread.sleep(Duration.ofMillis(tokens.tokens().size() * 1_000L / reply.tokensPerSecond()));
+		}
+		String content = String.join("", tokens.tokens());
+		ObjectNode response = prompt.protocol() == Protocol.OLLAMA ?
+						ollamaChunk(prompt, content, true)
+										.put("done_reason", tokens.truncated() ? "length" : "stop")
+										.put("prompt_eval_count", prompt.inputTokens())
+										.put("eval_count", tokens.tokens().size()) :
+						openAiResponse(prompt, content, tokens);
+		byte[] body = MAPPER.writeValueAsBytes(response);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(body);
+		}
+	}
+
+	private void stream(HttpExchange exchange, Prompt prompt, Reply reply, boolean includeUsage) throws IOException, InterruptedException {
+		Tokens tokens = tokens(reply.text(), prompt.maximumTokens());
+		boolean ollama = prompt.protocol() == Protocol.OLLAMA;
+		exchange.getResponseHeaders().set("Content-Type", ollama ? "application/x-ndjson" : "text/event-stream");
+		// Chunked
+		exchange.sendResponseHeaders(200, 0);
+		long interval = reply.tokensPerSecond() > 0 ? 1_000_000_000L / reply.tokensPerSecond() : 0;
+		try (OutputStream output = exchange.getResponseBody()) {
+			for (int i = 0; i < tokens.tokens().size(); i++) {
+				if (i > 0 && interval > 0) {
+					Thread.sleep(Duration.ofNanos(interval));
+				}
+				String token = tokens.tokens().get(i);
+				write(output, ollama, ollama ? ollamaChunk(prompt, token, false) : openAiChunk(prompt, token, i == 0, null));
+			}
+			if (ollama) {
+				write(output, true, ollamaChunk(prompt, "", true)
+								.put("done_reason", tokens.truncated() ? "length" : "stop")
+								.put("prompt_eval_count", prompt.inputTokens())
+								.put("eval_count", tokens.tokens().size()));
+			}
+			else {
+				write(output, false, openAiChunk(prompt, null, false, tokens.truncated() ? "length" : "stop"));
+				if (includeUsage) {
+					ObjectNode usage = openAiObject(prompt, "chat.completion.chunk");
+					usage.putArray("choices");
+					usage.set("usage", usage(prompt, tokens));
+					write(output, false, usage);
+				}
+				output.write("data: [DONE]\n\n".getBytes(UTF_8));
+				output.flush();
+			}
+		}
+	}
+
+	private static void write(OutputStream output, boolean ollama, ObjectNode chunk) throws IOException {
+		String json = MAPPER.writeValueAsString(chunk);
+		output.write((ollama ? json + "\n" : "data: " + json + "\n\n").getBytes(UTF_8));
+		output.flush();
+	}
+
+	private static void error(HttpExchange exchange, Protocol protocol, Reply reply) throws IOException {
+		ObjectNode error = MAPPER.createObjectNode();
+		if (protocol == Protocol.OLLAMA) {
+			error.put("error", reply.text());
+		}
+		else {
+			error.putObject("error")
+							.put("message", reply.text())
+							.put("type", switch (reply.status()) {
+								case 400 -> "invalid_request_error";
+								case 429 -> "rate_limit_exceeded";
+								default -> "server_error";
+							})
+							.putNull("code");
+		}
+		if (reply.status() == 429) {
+			exchange.getResponseHeaders().set("Retry-After", "1");
+		}
+		byte[] body = MAPPER.writeValueAsBytes(error);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(reply.status(), body.length);
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(body);
+		}
+	}
+
+	private static ObjectNode ollamaChunk(Prompt prompt, String content, boolean done) {
+		ObjectNode chunk = MAPPER.createObjectNode()
+						.put("model", prompt.model())
+						.put("created_at", Instant.now().toString());
+		chunk.putObject("message")
+						.put("role", "assistant")
+						.put("content", content);
+
+		return chunk.put("done", done);
+	}
+
+	private static ObjectNode openAiResponse(Prompt prompt, String content, Tokens tokens) {
+		ObjectNode response = openAiObject(prompt, "chat.completion");
+		ObjectNode choice = response.putArray("choices").addObject()
+						.put("index", 0)
+						.put("finish_reason", tokens.truncated() ? "length" : "stop");
+		choice.putObject("message")
+						.put("role", "assistant")
+						.put("content", content);
+		response.set("usage", usage(prompt, tokens));
+
+		return response;
+	}
+
+	/**
+	 * @param token the token, null for the final chunk
+	 * @param first true for the first chunk, which includes the role
+	 * @param finishReason the finish reason of the final chunk, otherwise null
+	 */
+	private static ObjectNode openAiChunk(Prompt prompt, String token, boolean first, String finishReason) {
+		ObjectNode chunk = openAiObject(prompt, "chat.completion.chunk");
+		ObjectNode choice = chunk.putArray("choices").addObject()
+						.put("index", 0)
+						.put("finish_reason", finishReason);
+		ObjectNode delta = choice.putObject("delta");
+		if (first) {
+			delta.put("role", "assistant");
+		}
+		if (token != null) {
+			delta.put("content", token);
+		}
+
+		return chunk;
+	}
+
+	private static ObjectNode openAiObject(Prompt prompt, String object) {
+		return MAPPER.createObjectNode()
+						.put("id", "chatcmpl-stub-" + prompt.number())
+						.put("object", object)
+						.put("created", Instant.now().getEpochSecond())
+						.put("model", prompt.model());
+	}
+
+	private static ObjectNode usage(Prompt prompt, Tokens tokens) {
+		return MAPPER.createObjectNode()
+						.put("prompt_tokens", prompt.inputTokens())
+						.put("completion_tokens", tokens.tokens().size())
+						.put("total_tokens", prompt.inputTokens() + tokens.tokens().size());
+	}
+
+	/**
+	 * Splits the given text into tokens, words including the whitespace following them.
+	 * @param text the text
+	 * @param maximumTokens the maximum number of tokens, zero for no maximum
+	 * @return the tokens
+	 */
+	private static Tokens tokens(String text, int maximumTokens) {
+		List<String> tokens = new ArrayList<>(List.of(text.split("(?<=\\s)(?=\\S)")));
+		boolean truncated = maximumTokens > 0 && tokens.size() > maximumTokens;
+		if (truncated) {
+			tokens.subList(maximumTokens, tokens.size()).clear();
+		}
+
+		return new Tokens(tokens, truncated);
+	}
+
+	private record Tokens(List<String> tokens, boolean truncated) {}
+
+	/**
+	 * Replies based on the builder settings
+	 */
+	private static final class DefaultScript implements Script {
+
+		private static final String[] WORDS = {"the", "stub", "server", "replies", "with", "a", "generated",
+						"response", "of", "the", "configured", "length", "at", "the", "configured", "rate"};
+
+		private final Duration latency;
+		private final int tokensPerSecond;
+		private final String text;
+		private final Function<Prompt, String> response;
+		private final double errorRate;
+		private final int errorStatus;
+		private final Random random;
+
+		private DefaultScript(Builder builder) {
+			this.latency = builder.latency;
+			this.tokensPerSecond = builder.tokensPerSecond;
+			this.text = text(builder.tokens);
+			this.response = builder.response;
+			this.errorRate = builder.errorRate;
+			this.errorStatus = builder.errorStatus;
+			this.random = new Random(builder.seed);
+		}
+
+		@Override
+		public Reply reply(Prompt prompt) {
+			if (errorRate > 0 && failure()) {
+				return Reply.error(errorStatus, "Injected error for request " + prompt.number())
+								.latency(latency);
+			}
+
+			return Reply.text(response == null ? text : response.apply(prompt))
+							.latency(latency)
+							.tokensPerSecond(tokensPerSecond);
+		}
+
+		private boolean failure() {
+			synchronized (random) {
+				return random.nextDouble() < errorRate;
+			}
+		}
+
+		private static String text(int tokens) {
+			StringBuilder builder = new StringBuilder();
+			for (int i = 0; i < tokens; i++) {
+				builder.append(i == 0 ? "" : " ").append(WORDS[i % WORDS.length]);
+			}
+
+			return builder.toString();
+		}
+	}
+}
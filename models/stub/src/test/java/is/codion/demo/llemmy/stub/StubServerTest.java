@@ -0,0 +1,203 @@
+/*
+ * This file is part of Codion Llemmy Demo.
+ *
+ * Codion Llemmy Demo is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Codion Llemmy Demo is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Codion Llemmy Demo.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright (c) 2025 - 2026, Björn Darri Sigurðsson.
+ */
+package is.codion.demo.llemmy.stub;
+
+import is.codion.demo.llemmy.stub.StubServer.Reply;
+
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.exception.InternalServerException;
+import dev.langchain4j.exception.RateLimitException;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.ollama.OllamaChatModel;
+import dev.langchain4j.model.ollama.OllamaStreamingChatModel;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.output.FinishReason;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the real Ollama and OpenAI clients against the stub server.
+ */
+final class StubServerTest {
+
+	private static final String TEXT = "one two three four five";
+
+	private StubServer server;
+
+	@BeforeEach
+	void start() throws IOException {
+		server = StubServer.builder()
+						.script(prompt -> switch (prompt.text()) {
+							case "429" -> Reply.error(429, "Too many requests");
+							case "503" -> Reply.error(503, "Unavailable");
+							default -> Reply.text(TEXT).tokensPerSecond(1_000);
+						})
+						.start();
+	}
+
+	@AfterEach
+	void stop() {
+		server.close();
+	}
+
+	@Test
+	void ollama() {
+		ChatModel chatModel = OllamaChatModel.builder()
+						.baseUrl(server.ollamaUrl())
+						.modelName("stub")
+						.maxRetries(0)
+						.build();
+		reply(chatModel);
+		errors(chatModel);
+	}
+
+	@Test
+	void ollamaStreaming() throws Exception {
+		streamed(OllamaStreamingChatModel.builder()
+						.baseUrl(server.ollamaUrl())
+						.modelName("stub")
+						.build());
+	}
+
+	@Test
+	void openAi() {
+		ChatModel chatModel = OpenAiChatModel.builder()
+						.baseUrl(server.openAiUrl())
+						.apiKey("stub")
+						.modelName("stub")
+						.maxRetries(0)
+						.build();
+		reply(chatModel);
+		errors(chatModel);
+	}
+
+	@Test
+	void openAiStreaming() throws Exception {
+		streamed(OpenAiStreamingChatModel.builder()
+						.baseUrl(server.openAiUrl())
+						.apiKey("stub")
+						.modelName("stub")
+						.build());
+	}
+
+	@Test
+	void malformedRequest() throws Exception {
+		try (HttpClient client = HttpClient.newHttpClient()) {
+			for (String path : List.of("/api/chat", "/v1/chat/completions")) {
+				for (String body : List.of("{\"model\": ", "", "[]")) {
+					HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(server.ollamaUrl() + path))
+									.POST(HttpRequest.BodyPublishers.ofString(body))
+									.build(), HttpResponse.BodyHandlers.ofString());
+					assertEquals(400, response.statusCode());
+					assertTrue(response.body().contains("Malformed request"));
+				}
+			}
+		}
+		assertEquals(0, server.requests());
+	}
+
+	private void reply(ChatModel chatModel) {
+		ChatResponse response = chatModel.chat(request("Hello", null));
+		assertEquals(TEXT, response.aiMessage().text());
+		assertEquals(FinishReason.STOP, response.finishReason());
+		assertEquals(5, response.tokenUsage().outputTokenCount());
+
+		response = chatModel.chat(request("Hello", 2));
+		assertEquals("one two ", response.aiMessage().text());
+		assertEquals(FinishReason.LENGTH, response.finishReason());
+		assertEquals(2, response.tokenUsage().outputTokenCount());
+	}
+
+	private static void errors(ChatModel chatModel) {
+		assertThrows(RateLimitException.class, () -> chatModel.chat(request("429", null)));
+		assertThrows(InternalServerException.class, () -> chatModel.chat(request("503", null)));
+	}
+
+	private void streamed(StreamingChatModel chatModel) throws Exception {
+		List<String> partialResponses = new ArrayList<>();
+		ChatResponse response = stream(chatModel, request("Hello", null), partialResponses);
+		assertEquals(TEXT, response.aiMessage().text());
+		assertEquals(TEXT, String.join("", partialResponses));
+		assertEquals(5, partialResponses.size());
+		assertEquals(FinishReason.STOP, response.finishReason());
+		assertEquals(5, response.tokenUsage().outputTokenCount());
+
+		partialResponses.clear();
+		response = stream(chatModel, request("Hello", 2), partialResponses);
+		assertEquals("one two ", response.aiMessage().text());
+		assertEquals(List.of("one ", "two "), partialResponses);
+		assertEquals(FinishReason.LENGTH, response.finishReason());
+
+		// The error is passed to the handler
+		assertThrows(ExecutionException.class, () -> stream(chatModel, request("429", null), new ArrayList<>()));
+		assertThrows(ExecutionException.class, () -> stream(chatModel, request("503", null), new ArrayList<>()));
+		assertEquals(4, server.requests());
+	}
+
+	private static ChatResponse stream(StreamingChatModel chatModel, ChatRequest request,
+																		 List<String> partialResponses) throws Exception {
+		CompletableFuture<ChatResponse> response = new CompletableFuture<>();
+		chatModel.chat(request, new StreamingChatResponseHandler() {
+			@Override
+			public void onPartialResponse(String partialResponse) {
+				partialResponses.add(partialResponse);
+			}
+
+			@Override
+			public void onCompleteResponse(ChatResponse completeResponse) {
+				response.complete(completeResponse);
+			}
+
+			@Override
+			public void onError(Throwable error) {
+				response.completeExceptionally(error);
+			}
+		});
+
+		return response.get(10, TimeUnit.SECONDS);
+	}
+
+	private static ChatRequest request(String text, Integer maxOutputTokens) {
+		return ChatRequest.builder()
+						.messages(UserMessage.from(text))
+						.maxOutputTokens(maxOutputTokens)
+						.build();
+	}
+}